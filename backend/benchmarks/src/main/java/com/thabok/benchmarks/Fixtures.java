@@ -0,0 +1,81 @@
+package com.thabok.benchmarks;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.PlanInputData;
+import com.thabok.helper.DayPlanInputBuilder;
+import com.thabok.main.Controller;
+
+/**
+ * Persons with converted schedules (no WebUntis needed) for the benchmarks. The fixture files in
+ * src/main/resources/fixtures are created with {@link #main(String[])} by the {@link SyntheticSchool},
+ * so they only change if the generator changes.
+ * @author thabok
+ */
+public class Fixtures {
+
+	private static final long SEED = 42;
+	private static final int[] SIZES = { 12, 40 };
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Loads a fixture (e.g. "persons-40") from the classpath.
+	 */
+	public static PlanInputData load(String name) throws Exception {
+		try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".json")) {
+			if (in == null) {
+				throw new Exception("Fixture not found: " + name);
+			}
+			return new Gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), PlanInputData.class);
+		}
+	}
+
+	/**
+	 * Sets the reference week of the current thread and precomputes the time slots of the persons, like
+	 * PlanCalculator.prepare does after fetching the timetables. Must be called by the benchmark thread.
+	 */
+	public static DayPlanInputBuilder prepare(PlanInputData inputData) {
+		Controller.setReferenceWeekStartDate(inputData.scheduleReferenceStartDate);
+		DayPlanInputBuilder inputBuilder = new DayPlanInputBuilder();
+		inputData.persons.forEach(inputBuilder::add);
+		return inputBuilder;
+	}
+
+	/**
+	 * Loads the fixture and calculates a plan candidate on the current thread (input for the kernel benchmarks).
+	 */
+	public static MasterPlan calculatePlan(String name) throws Exception {
+		PlanInputData inputData = load(name);
+		DayPlanInputBuilder inputBuilder = prepare(inputData);
+		return new Controller().calculateWeekPlan(inputData.persons, null, inputBuilder);
+	}
+
+	/**
+	 * Writes the fixture files.
+	 *
+	 * @param args the target directory (default: src/main/resources/fixtures)
+	 */
+	public static void main(String[] args) throws Exception {
+		Path directory = Paths.get(args.length > 0 ? args[0] : "src/main/resources/fixtures");
+		Files.createDirectories(directory);
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		for (int size : SIZES) {
+			Path file = directory.resolve("persons-" + size + ".json");
+			SyntheticSchool school = new SyntheticSchool(size);
+			school.seed = SEED;
+			Files.writeString(file, gson.toJson(school.generate()));
+			System.out.println("Wrote " + file);
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.thabok.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.entities.DayOfWeekABCombo;
+import com.thabok.entities.DayPlan;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.Party;
+import com.thabok.entities.Person;
+import com.thabok.helper.ControllerInitHelper;
+import com.thabok.helper.PartyHelper;
+
+/**
+ * Grouping by time slot: the persons of a day by start / end time with tolerance merging
+ * ({@link ControllerInitHelper}) and the parties of a day ({@link PartyHelper#getPartiesByStartOrEndTime(List, boolean)}).
+ * The inputs are the fixture persons and the day with the most parties of a calculated plan.
+ * @author thabok
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GroupingBenchmark {
+
+	@Param({ "persons-12", "persons-40" })
+	public String fixture;
+
+	private List<Person> persons;
+	private DayOfWeekABCombo day;
+	private Map<Integer, List<Person>> personsByExactStartTime;
+	private List<Party> schoolboundParties;
+
+	@Setup
+	public void setUp() throws Exception {
+		MasterPlan plan = Fixtures.calculatePlan(fixture);
+		persons = plan.persons;
+		DayPlan busiestDay = plan.getDayPlans().values().stream()
+				.max((d1, d2) -> Integer.compare(d1.getPartyTuples().size(), d2.getPartyTuples().size())).get();
+		day = busiestDay.getDayOfWeekABCombo();
+		personsByExactStartTime = ControllerInitHelper.getPersonsByStartTime(persons, day, false);
+		schoolboundParties = PartyHelper.getParties(busiestDay, true);
+	}
+
+	@Benchmark
+	public Map<Integer, List<Person>> getPersonsByStartTime() {
+		return ControllerInitHelper.getPersonsByStartTime(persons, day, true);
+	}
+
+	@Benchmark
+	public Map<Integer, List<Person>> getPersonsByEndTime() {
+		return ControllerInitHelper.getPersonsByEndTime(persons, day, true);
+	}
+
+	@Benchmark
+	public Map<Integer, List<Person>> mergeByTolerance() {
+		return ControllerInitHelper.mergeByTolerance(personsByExactStartTime);
+	}
+
+	@Benchmark
+	public Map<Integer, List<Party>> getPartiesByStartOrEndTime() {
+		return PartyHelper.getPartiesByStartOrEndTime(schoolboundParties, true);
+	}
+
+}
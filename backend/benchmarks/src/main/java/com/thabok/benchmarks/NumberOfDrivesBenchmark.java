@@ -0,0 +1,74 @@
+package com.thabok.benchmarks;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.entities.DayOfWeekABCombo;
+import com.thabok.entities.DayPlan;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.NumberOfDrivesStatus;
+import com.thabok.entities.Person;
+
+/**
+ * The sorting of {@link NumberOfDrivesStatus} (by number of drives, per week and with the mirror day rules for a
+ * given day) with a calculated plan. {@link #getNumberOfDrives()} shows how much of that is counting the drives.
+ * @author thabok
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumberOfDrivesBenchmark {
+
+	@Param({ "persons-12", "persons-40" })
+	public String fixture;
+
+	private NumberOfDrivesStatus nods;
+	private DayOfWeekABCombo day;
+
+	@Setup
+	public void setUp() throws Exception {
+		MasterPlan plan = Fixtures.calculatePlan(fixture);
+		nods = new NumberOfDrivesStatus(plan);
+		// Monday of the A week
+		day = plan.getDayPlans().values().stream().map(DayPlan::getDayOfWeekABCombo)
+				.min(Comparator.comparingInt(DayOfWeekABCombo::getUniqueNumber)).get();
+	}
+
+	@Benchmark
+	public Map<Person, Integer> getNumberOfDrives() {
+		return nods.getNumberOfDrives();
+	}
+
+	@Benchmark
+	public List<Person> getPersonsSortedByNumberOfDrives() {
+		return nods.getPersonsSortedByNumberOfDrive(false);
+	}
+
+	@Benchmark
+	public List<Person> getPersonsSortedByNumberOfDrivesOfWeek() {
+		return nods.getPersonsSortedByNumberOfDrives(true, day.getUniqueNumber() < 8);
+	}
+
+	@Benchmark
+	public List<Person> getPersonsSortedByNumberOfDrivesForGivenDay() {
+		return nods.getPersonsSortedByNumberOfDrivesForGivenDay(day);
+	}
+
+}
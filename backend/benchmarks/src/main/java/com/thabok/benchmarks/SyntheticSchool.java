@@ -0,0 +1,158 @@
+package com.thabok.benchmarks;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.thabok.entities.CustomDay;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.helper.TimetableHelper;
+import com.thabok.main.Controller;
+import com.thabok.untis.Period;
+import com.thabok.untis.SyntheticTimetable;
+import com.thabok.untis.TimetableResponseReader;
+import com.thabok.util.Util;
+
+/**
+ * Generates the persons of a school of any size for the benchmarks: the timetables of the A and B week come from
+ * {@link SyntheticTimetable} and are converted to schedules like the fetched ones, plus part-time patterns, custom
+ * preferences and different cars. The result only depends on the parameters (incl. the seed).
+ * <br><br>
+ * Part-time persons have one or two free weekdays in both weeks, some of them only work in the A week on one of
+ * these days. The other preferences (driving skip, needs car, custom times, ...) are spread randomly.
+ * @author thabok
+ */
+public class SyntheticSchool {
+
+	public static final int REFERENCE_START_DATE = 20210830;
+
+	/**
+	 * Number of persons
+	 */
+	public int size;
+	/**
+	 * Number of possible first lessons, more spread means more different time slots
+	 */
+	public int firstLessonSpread = SyntheticTimetable.DEFAULT_FIRST_LESSON_SPREAD;
+	/**
+	 * Max. number of lessons of a day (timetable density)
+	 */
+	public int maxLessonsPerDay = SyntheticTimetable.DEFAULT_MAX_LESSONS_PER_DAY;
+	/**
+	 * Share of the persons that work part time (0..1)
+	 */
+	public double partTimeShare = 0.2;
+	/**
+	 * Share of the days with a custom preference (0..1)
+	 */
+	public double preferenceShare = 0.1;
+	public long seed = 42;
+
+	public SyntheticSchool(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * @return the persons (with schedules) and the reference week
+	 */
+	public PlanInputData generate() throws Exception {
+		Controller.setReferenceWeekStartDate(REFERENCE_START_DATE);
+		int endDate = Util.calculateDateNumber(REFERENCE_START_DATE, 11);
+		Random random = new Random(seed);
+		Gson gson = new Gson();
+		List<Person> persons = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Person person = new Person();
+			person.firstName = "First" + i;
+			person.lastName = "Last" + i;
+			person.initials = "P" + i;
+			person.numberOfSeats = getNumberOfSeats(random);
+			person.isCarRoomy = person.numberOfSeats > 5;
+			person.isTall = random.nextInt(4) == 0;
+			person.isPartTime = random.nextDouble() < partTimeShare;
+			person.maxDrives = 5;
+			if (person.isPartTime) {
+				applyPartTimePattern(person, random);
+			}
+			applyPreferences(person, random);
+			String response = gson.toJson(Map.of("id", person.initials, "result",
+					SyntheticTimetable.generate(person.initials, REFERENCE_START_DATE, endDate, seed, firstLessonSpread, maxLessonsPerDay)));
+			Map<Integer, Period> timetable = TimetableResponseReader.readTimetable(new StringReader(response), person.initials);
+			person.schedule = TimetableHelper.timetableToSchedule(person, timetable);
+			persons.add(person);
+		}
+		PlanInputData inputData = new PlanInputData();
+		inputData.persons = persons;
+		inputData.scheduleReferenceStartDate = REFERENCE_START_DATE;
+		return inputData;
+	}
+
+	/**
+	 * Mostly 5 seats, some smaller and some bigger cars
+	 */
+	private static int getNumberOfSeats(Random random) {
+		int value = random.nextInt(20);
+		if (value == 0) {
+			return 2;
+		} else if (value < 4) {
+			return 4;
+		} else if (value < 6) {
+			return 7;
+		}
+		return 5;
+	}
+
+	/**
+	 * One or two free weekdays (the same in both weeks), every third part-time person works in the A week on the
+	 * first of these days.
+	 */
+	private static void applyPartTimePattern(Person person, Random random) {
+		person.maxDrives = 3;
+		int freeDays = 1 + random.nextInt(2);
+		int firstFreeDay = random.nextInt(5);
+		boolean worksInWeekA = random.nextInt(3) == 0;
+		for (int i = 0; i < freeDays; i++) {
+			int weekday = (firstFreeDay + i * 2) % 5;
+			if (i > 0 || !worksInWeekA) {
+				person.customDays.get(weekday).ignoreCompletely = true;
+			}
+			person.customDays.get(weekday + 5).ignoreCompletely = true;
+		}
+	}
+
+	private void applyPreferences(Person person, Random random) {
+		for (CustomDay customDay : person.customDays.values()) {
+			if (customDay.ignoreCompletely || random.nextDouble() >= preferenceShare) {
+				continue;
+			}
+			switch (random.nextInt(7)) {
+			case 0:
+				customDay.drivingSkip = true;
+				break;
+			case 1:
+				customDay.needsCar = true;
+				break;
+			case 2:
+				customDay.noWaitingAfternoon = true;
+				break;
+			case 3:
+				customDay.skipMorning = true;
+				break;
+			case 4:
+				customDay.skipAfternoon = true;
+				break;
+			case 5:
+				customDay.customStart = "8:45";
+				break;
+			default:
+				customDay.customEnd = "15:00";
+				break;
+			}
+		}
+	}
+
+}
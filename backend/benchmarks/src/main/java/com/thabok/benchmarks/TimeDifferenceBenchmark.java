@@ -0,0 +1,78 @@
+package com.thabok.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.untis.SyntheticTimetable;
+import com.thabok.util.Util;
+
+/**
+ * {@link Util#getTimeDifference(int, int)} and {@link Util#isTimeDifferenceAcceptable(int, int)} with pairs of
+ * lesson start and end times (some of them with a break supervision before the lesson). The score is the time of
+ * a single call.
+ * @author thabok
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeDifferenceBenchmark {
+
+	private static final int PAIRS = 64;
+
+	private final int[] times1 = new int[PAIRS];
+	private final int[] times2 = new int[PAIRS];
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(1);
+		for (int i = 0; i < PAIRS; i++) {
+			times1[i] = getTime(random);
+			times2[i] = getTime(random);
+		}
+	}
+
+	private static int getTime(Random random) {
+		int[] lesson = SyntheticTimetable.LESSON_TIMES[random.nextInt(SyntheticTimetable.LESSON_TIMES.length)];
+		int time = lesson[random.nextInt(2)];
+		// break supervision: 15 minutes earlier
+		return random.nextInt(8) == 0 ? time - 15 : time;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int getTimeDifference() {
+		int sum = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			sum += Util.getTimeDifference(times1[i], times2[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int isTimeDifferenceAcceptable() {
+		int acceptable = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			if (Util.isTimeDifferenceAcceptable(times1[i], times2[i])) {
+				acceptable++;
+			}
+		}
+		return acceptable;
+	}
+
+}
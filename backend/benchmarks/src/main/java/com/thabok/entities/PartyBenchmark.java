@@ -0,0 +1,61 @@
+package com.thabok.entities;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.benchmarks.Fixtures;
+
+/**
+ * {@link Party#updateTime()} (called whenever passengers are added or removed) with the fullest schoolbound and
+ * homebound party of a calculated plan. The class is in the package of Party because updateTime is package-private.
+ * @author thabok
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PartyBenchmark {
+
+	@Param({ "persons-40" })
+	public String fixture;
+
+	private Party schoolboundParty;
+	private Party homeboundParty;
+
+	@Setup
+	public void setUp() throws Exception {
+		MasterPlan plan = Fixtures.calculatePlan(fixture);
+		Comparator<Party> byPassengers = Comparator.comparingInt(party -> party.getPassengers().size());
+		schoolboundParty = plan.getDayPlans().values().stream().flatMap(dp -> dp.getPartyTuples().stream())
+				.map(PartyTuple::getPartyThere).max(byPassengers).get();
+		homeboundParty = plan.getDayPlans().values().stream().flatMap(dp -> dp.getPartyTuples().stream())
+				.map(PartyTuple::getPartyBack).max(byPassengers).get();
+	}
+
+	@Benchmark
+	public int updateTimeSchoolbound() {
+		schoolboundParty.updateTime();
+		return schoolboundParty.getTime();
+	}
+
+	@Benchmark
+	public int updateTimeHomebound() {
+		homeboundParty.updateTime();
+		return homeboundParty.getTime();
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.thabok.main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.benchmarks.Fixtures;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.helper.DayPlanInputBuilder;
+
+/**
+ * End-to-end benchmarks of the planner with the fixture persons: one plan candidate
+ * ({@link Controller#calculateWeekPlan(List, MasterPlan, DayPlanInputBuilder)}), a search with a fixed number of
+ * candidates ({@link PlanCalculator#findBestWeekPlan(Controller, List, DayPlanInputBuilder, int)}) and the scoring
+ * of a candidate. Run with "-prof gc" for the allocations per operation (gc.alloc.rate.norm).
+ * <br><br>
+ * The class is in the package of the planner because the scoring functions are package-private.
+ * @author thabok
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PlannerBenchmark {
+
+	@Param({ "persons-12", "persons-40" })
+	public String fixture;
+
+	/**
+	 * Number of candidates per search
+	 */
+	@Param({ "50" })
+	public int searchCandidates;
+
+	private List<Person> persons;
+	private DayPlanInputBuilder inputBuilder;
+	private Controller controller;
+	private MasterPlan candidate;
+	private final Random random = new Random(1);
+
+	@Setup
+	public void setUp() throws Exception {
+		PlanInputData inputData = Fixtures.load(fixture);
+		persons = new ArrayList<>(inputData.persons);
+		inputBuilder = Fixtures.prepare(inputData);
+		controller = new Controller();
+		candidate = controller.calculateWeekPlan(persons, null, inputBuilder);
+	}
+
+	@Benchmark
+	public MasterPlan calculateWeekPlan() throws Exception {
+		Collections.shuffle(persons, random);
+		return controller.calculateWeekPlan(persons, null, inputBuilder);
+	}
+
+	@Benchmark
+	public MasterPlan findBestWeekPlan() throws Exception {
+		int[] calculated = { 0 };
+		// the search ends when it's cancelled: after exactly searchCandidates candidates
+		PlanCalculator calculator = new PlanCalculator(() -> calculated[0]++ >= searchCandidates, progress -> {});
+		return calculator.findBestWeekPlan(controller, persons, inputBuilder, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public int score() {
+		return PlanCalculator.calculateNumberOfPersonsAboveThreshold(candidate, 4) * 10000
+				+ PlanCalculator.calculateNumberOfPersonsAboveThreshold(candidate, 5) * 100
+				+ PlanCalculator.calculateNumberOfInvoluntaryDrives(candidate);
+	}
+
+}
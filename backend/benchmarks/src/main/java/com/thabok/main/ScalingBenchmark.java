@@ -0,0 +1,215 @@
+package com.thabok.main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thabok.benchmarks.Fixtures;
+import com.thabok.benchmarks.SyntheticSchool;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.NumberOfDrivesStatus;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.helper.DayPlanInputBuilder;
+
+/**
+ * How the planner scales with the size of the school ({@link SyntheticSchool}s with 25 to 500 persons).
+ * <br><br>
+ * As JMH benchmark it measures the average time of one plan candidate per size (run with "-prof gc" for the
+ * allocations). {@link #main(String[])} runs a search with a fixed number of candidates per size and writes a
+ * report with runtime, memory and the quality of the best plan:
+ * <pre>
+ * java -cp target/benchmarks.jar com.thabok.main.ScalingBenchmark [report file] [candidates] [sizes...]
+ * </pre>
+ * @author thabok
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+@State(Scope.Thread)
+public class ScalingBenchmark {
+
+	private static final int[] DEFAULT_SIZES = { 25, 50, 100, 200, 500 };
+	private static final int DEFAULT_CANDIDATES = 30;
+	private static final int WARMUP_CANDIDATES = 5;
+
+	@Param({ "25", "50", "100", "200", "500" })
+	public int persons;
+
+	private List<Person> personList;
+	private DayPlanInputBuilder inputBuilder;
+	private Controller controller;
+	private final Random random = new Random(1);
+
+	@Setup
+	public void setUp() throws Exception {
+		PlanInputData inputData = new SyntheticSchool(persons).generate();
+		personList = new ArrayList<>(inputData.persons);
+		inputBuilder = Fixtures.prepare(inputData);
+		controller = new Controller();
+	}
+
+	@Benchmark
+	public MasterPlan calculateWeekPlan() throws Exception {
+		Collections.shuffle(personList, random);
+		return controller.calculateWeekPlan(personList, null, inputBuilder);
+	}
+
+	/**
+	 * Result of one school size
+	 */
+	private static class Row {
+		int persons;
+		double setupMillis;
+		double searchMillis;
+		double millisPerCandidate;
+		double allocatedMbPerCandidate;
+		double retainedMb;
+		int personsWithMoreThanFourDrives;
+		int personsWithMoreThanFiveDrives;
+		int involuntaryDrives;
+		int maxDrives;
+		double averageDrives;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path reportFile = Paths.get(args.length > 0 ? args[0] : "target/scaling-report.md");
+		int candidates = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CANDIDATES;
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 2) {
+			sizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				sizes[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+		List<Row> rows = new ArrayList<>();
+		for (int size : sizes) {
+			Row row = measure(size, candidates);
+			rows.add(row);
+			System.err.println(String.format("%d persons: %.1f ms per candidate", size, row.millisPerCandidate));
+		}
+		String report = formatReport(rows, candidates);
+		if (reportFile.getParent() != null) {
+			Files.createDirectories(reportFile.getParent());
+		}
+		Files.writeString(reportFile, report);
+		System.err.println(report);
+		System.err.println("Wrote " + reportFile.toAbsolutePath());
+	}
+
+	private static Row measure(int size, int candidates) throws Exception {
+		Row row = new Row();
+		row.persons = size;
+		long heapBefore = getUsedHeapAfterGc();
+
+		long start = System.nanoTime();
+		PlanInputData inputData = new SyntheticSchool(size).generate();
+		List<Person> persons = new ArrayList<>(inputData.persons);
+		DayPlanInputBuilder inputBuilder = Fixtures.prepare(inputData);
+		row.setupMillis = (System.nanoTime() - start) / 1e6;
+
+		Controller controller = new Controller();
+		search(controller, persons, inputBuilder, WARMUP_CANDIDATES);
+
+		long allocatedBefore = getAllocatedBytes();
+		start = System.nanoTime();
+		MasterPlan plan = search(controller, persons, inputBuilder, candidates);
+		row.searchMillis = (System.nanoTime() - start) / 1e6;
+		row.millisPerCandidate = row.searchMillis / candidates;
+		row.allocatedMbPerCandidate = (getAllocatedBytes() - allocatedBefore) / 1e6 / candidates;
+		row.retainedMb = (getUsedHeapAfterGc() - heapBefore) / 1e6;
+
+		row.personsWithMoreThanFourDrives = PlanCalculator.calculateNumberOfPersonsAboveThreshold(plan, 4);
+		row.personsWithMoreThanFiveDrives = PlanCalculator.calculateNumberOfPersonsAboveThreshold(plan, 5);
+		row.involuntaryDrives = PlanCalculator.calculateNumberOfInvoluntaryDrives(plan);
+		Collection<Integer> drives = new NumberOfDrivesStatus(plan).getNumberOfDrives().values();
+		row.maxDrives = drives.stream().mapToInt(Integer::intValue).max().orElse(0);
+		row.averageDrives = drives.stream().mapToInt(Integer::intValue).average().orElse(0);
+		// the inputs and the plan are part of the retained memory
+		Reference.reachabilityFence(persons);
+		Reference.reachabilityFence(inputBuilder);
+		Reference.reachabilityFence(plan);
+		return row;
+	}
+
+	/**
+	 * Searches the best plan among the given number of candidates
+	 */
+	private static MasterPlan search(Controller controller, List<Person> persons, DayPlanInputBuilder inputBuilder, int candidates) throws Exception {
+		int[] calculated = { 0 };
+		PlanCalculator calculator = new PlanCalculator(() -> calculated[0]++ >= candidates, progress -> {});
+		return calculator.findBestWeekPlan(controller, persons, inputBuilder, Integer.MAX_VALUE);
+	}
+
+	private static String formatReport(List<Row> rows, int candidates) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Planner scaling report\n\n");
+		sb.append(String.format("%s, Java %s, %d cores, max. heap %d MB, %d candidates per size (after %d warm-up candidates)\n\n",
+				LocalDate.now(), System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().maxMemory() / 1024 / 1024, candidates, WARMUP_CANDIDATES));
+		sb.append("| Persons | Setup (ms) | Search (ms) | ms / candidate | Allocated MB / candidate | Retained MB "
+				+ "| > 4 drives | > 5 drives | Involuntary drives | Max. drives | Avg. drives |\n");
+		sb.append("|--:|--:|--:|--:|--:|--:|--:|--:|--:|--:|--:|\n");
+		for (Row row : rows) {
+			sb.append(String.format("| %d | %.0f | %.0f | %.2f | %.2f | %.1f | %d | %d | %d | %d | %.2f |\n",
+					row.persons, row.setupMillis, row.searchMillis, row.millisPerCandidate, row.allocatedMbPerCandidate,
+					row.retainedMb, row.personsWithMoreThanFourDrives, row.personsWithMoreThanFiveDrives,
+					row.involuntaryDrives, row.maxDrives, row.averageDrives));
+		}
+		sb.append("\nSetup: generating the school and converting the timetables. Allocated MB: allocations of the search thread. "
+				+ "Retained MB: heap after GC with the persons, their time slots and the best plan (the first size also contains the "
+				+ "loaded classes). The drives columns describe the best plan of the search.\n");
+		if (rows.size() > 1) {
+			sb.append("\nGrowth of the time per candidate (relative to the previous size): ");
+			for (int i = 1; i < rows.size(); i++) {
+				Row previous = rows.get(i - 1);
+				Row row = rows.get(i);
+				double exponent = Math.log(row.millisPerCandidate / previous.millisPerCandidate) / Math.log((double) row.persons / previous.persons);
+				sb.append(String.format("%s%d -> %d: n^%.2f", i > 1 ? ", " : "", previous.persons, row.persons, exponent));
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	private static long getUsedHeapAfterGc() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+}
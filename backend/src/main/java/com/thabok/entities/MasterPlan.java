@@ -11,12 +11,21 @@ import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import com.thabok.helper.ControllerInitHelper;
+import com.thabok.helper.DayPlanInputBuilder;
 import com.thabok.helper.PartyHelper;
 import com.thabok.util.Util;
 
 public class MasterPlan {
 
 	public String summary;
+	/**
+	 * Initials of the persons whose timetable changed since it was fetched the last time
+	 */
+	public List<String> changedTeachers;
+	/**
+	 * Time and allocations per planning phase of the calculation that produced this plan
+	 */
+	public PlanProfile profile;
 	private Map<Integer, DayPlan> dayPlans = new TreeMap<>();
 	
 	public List<Person> persons;
@@ -29,18 +38,31 @@ public class MasterPlan {
 	 * @param inputsPerDay the inputs per day (for designated drivers)
 	 */
 	public MasterPlan(List<Person> persons, MasterPlan preset) {
+		this(persons, preset, null);
+	}
+	
+	/**
+	 * Creates a new master plan and initializes all day plans with the respective designated drivers.
+	 * 
+	 * @param inputBuilder provides the inputs per day based on precomputed time slots (if null, they are calculated from scratch)
+	 */
+	public MasterPlan(List<Person> persons, MasterPlan preset, DayPlanInputBuilder inputBuilder) {
 		this.persons = new ArrayList<>(persons);
-		initialize();
+		if (inputBuilder == null) {
+			initialize();
+		} else {
+			inputsPerDay = inputBuilder.build(this.persons);
+		}
 		if (preset == null) {
-			Collections.shuffle(Util.weekdayListAB);
-			Util.out = new PrintStream(OutputStream.nullOutputStream());
-			key = new ArrayList<>(Util.weekdayListAB);
+			Collections.shuffle(Util.getWeekdayListAB());
+			Util.setOut(new PrintStream(OutputStream.nullOutputStream()));
+			key = new ArrayList<>(Util.getWeekdayListAB());
 		} else {
 			key = preset.key;
-			Util.weekdayListAB = new ArrayList<>(preset.key);
-			Util.out = System.out;
+			Util.setWeekdayListAB(new ArrayList<>(preset.key));
+			Util.setOut(System.out);
 		}
-		for (DayOfWeekABCombo combo : Util.weekdayListAB) {
+		for (DayOfWeekABCombo combo : Util.getWeekdayListAB()) {
 			DayPlan dayPlan = new DayPlan(combo);
 			dayPlans.put(combo.getUniqueNumber(), dayPlan);
 		}
@@ -49,9 +71,31 @@ public class MasterPlan {
 		}
 	}
 
+	private MasterPlan(MasterPlan plan) {
+		summary = plan.summary;
+		profile = plan.profile;
+		dayPlans = plan.dayPlans;
+		persons = plan.persons;
+		inputsPerDay = plan.inputsPerDay;
+		key = plan.key;
+	}
+
+	/**
+	 * Creates a shallow copy (same day plans) for a single request, so that the request specific fields
+	 * (changed teachers, stripping the planning inputs for the client) don't change a shared plan.
+	 *
+	 * @param changedTeachers the changed teachers of the request
+	 * @return the copy
+	 */
+	public MasterPlan copyForRequest(List<String> changedTeachers) {
+		MasterPlan copy = new MasterPlan(this);
+		copy.changedTeachers = changedTeachers;
+		return copy;
+	}
+
 	private void initialize() {
 		inputsPerDay = new HashMap<>();
-        for (DayOfWeekABCombo dayOfWeekABCombo : Util.weekdayListAB) {
+        for (DayOfWeekABCombo dayOfWeekABCombo : Util.getWeekdayListAB()) {
             DayPlanInput dpi = new DayPlanInput();
             dpi.personsByFirstLesson = ControllerInitHelper.getPersonsByStartTime(persons, dayOfWeekABCombo, true);
             dpi.personsByLastLesson = ControllerInitHelper.getPersonsByEndTime(persons, dayOfWeekABCombo, true);
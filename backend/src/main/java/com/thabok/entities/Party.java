@@ -54,7 +54,8 @@ public class Party {
 	/**
 	 * Updates the party time to the earliest time (if wayThere) or the latest time (if wayBack) of any member (driver/passengers).
 	 */
-	private void updateTime() {
+	// package-private for the benchmarks (backend/benchmarks)
+	void updateTime() {
 		int updatedTime;
 		if (this.isWayBack) {
 			updatedTime = driver.schedule.get(dayOfWeekABCombo.getUniqueNumber()).getEndTime();
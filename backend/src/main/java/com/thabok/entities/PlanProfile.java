@@ -0,0 +1,50 @@
+package com.thabok.entities;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time and allocations per phase of Controller.calculateWeekPlan, summed up over all candidates of a
+ * plan calculation (see PhaseProfiler). Returned with the plan.
+ */
+public class PlanProfile {
+
+	/**
+	 * Number of calculated plans (candidates of the search and the traceability check)
+	 */
+	public int candidates;
+	public double totalMillis;
+	/**
+	 * Allocated bytes of all phases (-1 if the JVM doesn't support allocation counting)
+	 */
+	public long allocatedBytes;
+	public List<Phase> phases = new ArrayList<>();
+	/**
+	 * Timing of individual candidates (only if sampling is enabled: planner.profile.sampleEvery)
+	 */
+	public List<CandidateSample> samples = new ArrayList<>();
+
+	public static class Phase {
+		public String name;
+		public long calls;
+		public double totalMillis;
+		public double averageMicros;
+		public double maxMicros;
+		/**
+		 * Share of the total time (0..1)
+		 */
+		public double share;
+		public long allocatedBytes;
+		public long averageAllocatedBytes;
+	}
+
+	public static class CandidateSample {
+		public int candidate;
+		public double totalMicros;
+		public Map<String, Double> micros = new LinkedHashMap<>();
+		public Map<String, Long> allocatedBytes = new LinkedHashMap<>();
+	}
+
+}
@@ -4,4 +4,38 @@ public class ProgressObject {
     public float value = 0.0f;
     public String message = "";
 
-}
\ No newline at end of file
+    /**
+     * Current phase of the calculation: fetching, searching, calculating (preset) or done
+     */
+    public String phase = "";
+    /**
+     * Number of plan candidates so far and candidates per second (search phase only)
+     */
+    public int iterations;
+    public float iterationsPerSecond;
+    /**
+     * Scores of the best plan so far (search phase only, -1 if there is no plan yet)
+     */
+    public int bestPersonsWithMoreThanFourDrives = -1;
+    public int bestPersonsWithMoreThanFiveDrives = -1;
+    public int bestInvoluntaryDrives = -1;
+    /**
+     * Incremented with every published update
+     */
+    public long sequence;
+
+    public ProgressObject copy() {
+        ProgressObject copy = new ProgressObject();
+        copy.value = value;
+        copy.message = message;
+        copy.phase = phase;
+        copy.iterations = iterations;
+        copy.iterationsPerSecond = iterationsPerSecond;
+        copy.bestPersonsWithMoreThanFourDrives = bestPersonsWithMoreThanFourDrives;
+        copy.bestPersonsWithMoreThanFiveDrives = bestPersonsWithMoreThanFiveDrives;
+        copy.bestInvoluntaryDrives = bestInvoluntaryDrives;
+        copy.sequence = sequence;
+        return copy;
+    }
+
+}
@@ -65,7 +65,7 @@ public class AlternativeDriverHelper {
 				// pDD now contains all days with prio days in the front
 				Person alternativeDriver = tryToFindAlternativeDriver(theMasterPlan, sirDrivesALot, prioritizedDrivingDays, theMasterPlan.persons, theMasterPlan.inputsPerDay);
 				if (alternativeDriver == null) {
-					Util.out.println("Didn't find anyone to take over for " + sirDrivesALot);
+					Util.out().println("Didn't find anyone to take over for " + sirDrivesALot);
 				}
 			}
 		}
@@ -101,7 +101,7 @@ public class AlternativeDriverHelper {
 			// if the criteria is met, collect alternative candidates
 			List<AlternativeDriverConfig> alternateDriverCandidates = Collections.emptyList();
 			if (personsWithSameFirstLesson == 1 && personsWithSameLastLesson == 1) {
-				Util.out.print(sirDrivesALot + " is alone in the morning AND afternoon.");
+				Util.out().print(sirDrivesALot + " is alone in the morning AND afternoon.");
 			} else if (firstLessonIsTheReasonSirDrivesALotMustDrive) {
 				alternateDriverCandidates = findAlternateDriverCandidates(theMasterPlan, sirDrivesALot, 
 					persons, dayPlan, combo, startTime, false);
@@ -96,7 +96,17 @@ public class ControllerInitHelper {
         if (!applyTolerances) {
         	return personsByStartOrEndTime;
         }
-        // merge stuff if tolerance shall be considered
+        return mergeByTolerance(personsByStartOrEndTime);
+    }
+    
+    /**
+     * Merges the groups of persons whose start (or end) times are close enough to each other
+     * (see {@link Util#isTimeDifferenceAcceptable(int, int)}). The order of the persons within the groups is kept.
+     * 
+     * @param personsByStartOrEndTime persons grouped by their exact start or end time
+     * @return the merged groups (key: the earliest time of the group)
+     */
+    public static Map<Integer, List<Person>> mergeByTolerance(Map<Integer, List<Person>> personsByStartOrEndTime) {
         Map<Integer, List<Person>> personsByTimeMerged = new HashMap<>();
         int lastReferenceTime = 0;
         List<Entry<Integer, List<Person>>> sortedEntries = new ArrayList<>(personsByStartOrEndTime.entrySet());
@@ -0,0 +1,108 @@
+package com.thabok.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.thabok.entities.CustomDay;
+import com.thabok.entities.DayOfWeekABCombo;
+import com.thabok.entities.DayPlanInput;
+import com.thabok.entities.Person;
+import com.thabok.entities.TimingInfo;
+import com.thabok.util.Util;
+
+/**
+ * Builds the planning inputs per day ({@link DayPlanInput}) for a {@link com.thabok.entities.MasterPlan}.
+ * <br><br>
+ * The start and end time slots of a person are extracted as soon as the person is added (e.g. right after the
+ * timetable of that person has been converted), so this work overlaps with fetching the other timetables.
+ * Building the inputs for a plan candidate only groups the persons by the precomputed times. The persons are
+ * grouped in the order of the given list, because the order within the groups is part of the randomized search.
+ * <br><br>
+ * The schedules and custom preferences of the persons must not change after they have been added.
+ * @author thabok
+ */
+public class DayPlanInputBuilder {
+
+	private static final int NOT_PRESENT = -1;
+
+	/**
+	 * The days in a fixed order (independent of the shuffled {@link Util#getWeekdayListAB()})
+	 */
+	private final List<DayOfWeekABCombo> days;
+	private final Map<Person, int[][]> timesByPerson = new IdentityHashMap<>();
+
+	public DayPlanInputBuilder() {
+		days = new ArrayList<>(Util.getWeekdayListAB());
+		days.sort((d1, d2) -> Integer.compare(d1.getUniqueNumber(), d2.getUniqueNumber()));
+	}
+
+	/**
+	 * Extracts the start and end time per day of the given person (the schedule must already be set).
+	 */
+	public void add(Person person) {
+		int[] startTimes = new int[days.size()];
+		int[] endTimes = new int[days.size()];
+		for (int i = 0; i < days.size(); i++) {
+			DayOfWeekABCombo dayOfWeekABCombo = days.get(i);
+			CustomDay preferences = Util.getCustomDayObject(person, dayOfWeekABCombo);
+			TimingInfo timingInfo = person.schedule.get(dayOfWeekABCombo.getUniqueNumber());
+			boolean active = timingInfo != null && TimetableHelper.isPersonActiveOnThisDay(person, dayOfWeekABCombo);
+			startTimes[i] = active && !preferences.skipMorning ? timingInfo.getStartTime() : NOT_PRESENT;
+			endTimes[i] = active && !preferences.skipAfternoon ? timingInfo.getEndTime() : NOT_PRESENT;
+		}
+		synchronized (timesByPerson) {
+			timesByPerson.put(person, new int[][] { startTimes, endTimes });
+		}
+	}
+
+	/**
+	 * Builds the inputs per day for the given persons. The result is the same as grouping the persons with
+	 * {@link ControllerInitHelper#getPersonsByStartTime(List, DayOfWeekABCombo, boolean)} and
+	 * {@link ControllerInitHelper#getPersonsByEndTime(List, DayOfWeekABCombo, boolean)} (with tolerance).
+	 * Persons that haven't been added yet are added now.
+	 *
+	 * @param persons the persons of the plan (the order is kept within the groups)
+	 * @return the inputs per day (key: unique number of the day)
+	 */
+	public Map<Integer, DayPlanInput> build(List<Person> persons) {
+		List<int[][]> times = new ArrayList<>(persons.size());
+		for (Person person : persons) {
+			int[][] personTimes;
+			synchronized (timesByPerson) {
+				personTimes = timesByPerson.get(person);
+			}
+			if (personTimes == null) {
+				add(person);
+				synchronized (timesByPerson) {
+					personTimes = timesByPerson.get(person);
+				}
+			}
+			times.add(personTimes);
+		}
+		Map<Integer, DayPlanInput> inputsPerDay = new HashMap<>();
+		for (int i = 0; i < days.size(); i++) {
+			DayOfWeekABCombo dayOfWeekABCombo = days.get(i);
+			DayPlanInput dpi = new DayPlanInput();
+			dpi.personsByFirstLesson = ControllerInitHelper.mergeByTolerance(groupByTime(persons, times, 0, i));
+			dpi.personsByLastLesson = ControllerInitHelper.mergeByTolerance(groupByTime(persons, times, 1, i));
+			dpi.designatedDrivers = ControllerInitHelper.getDesignatedDrivers(dpi, persons, dayOfWeekABCombo);
+			inputsPerDay.put(dayOfWeekABCombo.getUniqueNumber(), dpi);
+		}
+		return inputsPerDay;
+	}
+
+	private static Map<Integer, List<Person>> groupByTime(List<Person> persons, List<int[][]> times, int startOrEnd, int dayIndex) {
+		Map<Integer, List<Person>> personsByTime = new HashMap<>();
+		for (int p = 0; p < persons.size(); p++) {
+			int time = times.get(p)[startOrEnd][dayIndex];
+			if (time != NOT_PRESENT) {
+				personsByTime.computeIfAbsent(time, t -> new ArrayList<>()).add(persons.get(p));
+			}
+		}
+		return personsByTime;
+	}
+
+}
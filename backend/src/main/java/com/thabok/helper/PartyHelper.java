@@ -200,7 +200,7 @@ public class PartyHelper {
 			if (checkWayThere) {
 				int candidateStartTime = driverCandidate.getTimeForDowCombo(combo, false);
 				if (!canDriverTakePersons(driverCandidate, combo, false)) {
-					Util.out.println(String.format("  - Driver %s [-->] doesn't take passengers.", driverCandidate));
+					Util.out().println(String.format("  - Driver %s [-->] doesn't take passengers.", driverCandidate));
 				} else {
 					boolean timeMatches = personToBeSeated.getTimeForDowCombo(combo, false) == candidateStartTime;
 					boolean timeMatchesWithTolerance = Util.isTimeDifferenceAcceptable(personToBeSeated.getTimeForDowCombo(combo, false), candidateStartTime);
@@ -216,7 +216,7 @@ public class PartyHelper {
 			if (checkWayBack) {
 				int candidateEndTime = driverCandidate.getTimeForDowCombo(combo, true);
 				if (!canDriverTakePersons(driverCandidate, combo, true)) {
-					Util.out.println(String.format("  - Driver %s [-->] doesn't take passengers.", driverCandidate));
+					Util.out().println(String.format("  - Driver %s [-->] doesn't take passengers.", driverCandidate));
 				} else {
 					boolean timeMatches = personToBeSeated.getTimeForDowCombo(combo, true) == candidateEndTime;
 					boolean timeMatchesWithTolerance = Util.isTimeDifferenceAcceptable(personToBeSeated.getTimeForDowCombo(combo, true), candidateEndTime);
@@ -244,7 +244,7 @@ public class PartyHelper {
 		 */
 		if ((partyThere == null && driverForWayThere == null) || (partyBack == null && driverForWayBack == null)) {
 			// desperate situation...
-			Util.out.println(String.format("  - No one found to take %s along -> creating new solo party.", personToBeSeated));
+			Util.out().println(String.format("  - No one found to take %s along -> creating new solo party.", personToBeSeated));
 		
 			// remove person from any previous parties
 			removePersonFromParties(personToBeSeated, partyThere, partyBack);
@@ -258,7 +258,7 @@ public class PartyHelper {
 			removePersonFromParties(personToBeSeated, partyThere, partyBack);
 			// create solo party
 			addSoloParty(dayPlan, personToBeSeated, inputsPerDay, reasonPhrase + " > " + personToBeSeated + " is the best candidate for the party -> solo party", Reason.ACCOMMODATE_PERSON);
-			Util.out.println(String.format("  - who would have thought: %s is the best candidate for a new party -> creating new solo party.", personToBeSeated));
+			Util.out().println(String.format("  - who would have thought: %s is the best candidate for a new party -> creating new solo party.", personToBeSeated));
 			
 		} else if (driverForWayThere != null && driverForWayThere.equals(driverForWayBack)) {
 			// same person for there and back
@@ -266,19 +266,19 @@ public class PartyHelper {
 			PartyTuple partyTuple = addSoloParty(dayPlan, driverForWayThere, inputsPerDay, reasonPhrase + " > same persons for there and back", Reason.ACCOMMODATE_PERSON);
 			partyTuple.getPartyThere().addPassenger(personToBeSeated, reasonPhrase + " > same persons for there and back");
 			partyTuple.getPartyBack().addPassenger(personToBeSeated, reasonPhrase + " > same persons for there and back");
-			Util.out.println(String.format("  - %s creates a new party, %s can join in the morning and afternoon.", driverForWayThere, personToBeSeated));
+			Util.out().println(String.format("  - %s creates a new party, %s can join in the morning and afternoon.", driverForWayThere, personToBeSeated));
 			
 		} else {
 			// different persons driving there and back
 			if (driverForWayThere != null) {
 				PartyTuple partyTupleThere = addSoloParty(dayPlan, driverForWayThere, inputsPerDay, reasonPhrase + " > different persons for there and back", Reason.ACCOMMODATE_PERSON);
 				partyTupleThere.getPartyThere().addPassenger(personToBeSeated, reasonPhrase + " > different persons for there and back");
-				Util.out.println(String.format("  - %s creates a new party, %s can join in the morning.", driverForWayThere, personToBeSeated));
+				Util.out().println(String.format("  - %s creates a new party, %s can join in the morning.", driverForWayThere, personToBeSeated));
 			}
 			if (driverForWayBack != null) {
 				PartyTuple partyTupleBack = addSoloParty(dayPlan, driverForWayBack, inputsPerDay, reasonPhrase + " > different persons for there and back", Reason.ACCOMMODATE_PERSON);
 				partyTupleBack.getPartyBack().addPassenger(personToBeSeated, reasonPhrase + " > different persons for there and back");
-				Util.out.println(String.format("  - %s creates a new party, %s can join in the afternoon.", driverForWayBack, personToBeSeated));
+				Util.out().println(String.format("  - %s creates a new party, %s can join in the afternoon.", driverForWayBack, personToBeSeated));
 			}
 			
 		}
@@ -3,6 +3,7 @@ package com.thabok.helper;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -39,6 +40,10 @@ public class TimetableHelper {
 		Map<Integer, TimingInfo> schedule = new HashMap<>();
 		for (Entry<Integer, Period> entry : timetable.entrySet()) {
 			DayOfWeekABCombo dayOfWeekABCombo = getDayOfWeekABCombo(entry.getKey() /* date */);
+			if (dayOfWeekABCombo == null) {
+				// weekend or outside of the A and B week
+				continue;
+			}
 			TimingInfo dayInfo = new TimingInfo();
 			// apply first & last lesson based on the retrieved timetable
 			dayInfo.setStartTime(entry.getValue().startTime);
@@ -50,7 +55,7 @@ public class TimetableHelper {
 			
 		}
 		// add missing days (can happen if people have gap days in their timetable (reffi)
-		for (DayOfWeekABCombo combo : Util.weekdayListAB) {
+		for (DayOfWeekABCombo combo : Util.getWeekdayListAB()) {
 			int dayNumber = combo.getUniqueNumber();
 			if (!schedule.containsKey(dayNumber)) {
 				TimingInfo dayInfo = new TimingInfo();
@@ -73,27 +78,57 @@ public class TimetableHelper {
 	 * @return true if the period is relevant for the carpool planning. False if not.
 	 */
 	public static boolean isPeriodRelevant(Period period, String initials) {
+		int teacherMatch = 0;
+		if (period.te != null) {
+			for (Teacher teacher : period.te) {
+				teacherMatch |= getTeacherMatch(teacher.name, teacher.orgname, initials);
+			}
+		}
+		return isPeriodRelevant(period.code, period.isOnCallSubstitution(), teacherMatch);
+	}
+	
+	/**
+	 * Flag: the period is handled by the specified teacher
+	 */
+	public static final int TEACHER_MATCHING_NAME = 1;
+	
+	/**
+	 * Flag: the period is only handled temporarily by the specified teacher
+	 */
+	public static final int TEACHER_DIFFERENT_ORGNAME = 2;
+	
+	/**
+	 * Checks one teacher entry of a period (attributes "name" and "orgname") against the queried initials.
+	 * The flags of all teachers of a period can be combined with a bitwise or.
+	 * 
+	 * @return {@link #TEACHER_MATCHING_NAME}, {@link #TEACHER_DIFFERENT_ORGNAME} or 0
+	 */
+	public static int getTeacherMatch(String name, String orgname, String initials) {
+		if (orgname != null) {
+			return orgname.equals(initials) ? TEACHER_MATCHING_NAME : TEACHER_DIFFERENT_ORGNAME;
+		} else if (name != null && name.equals(initials)) {
+			return TEACHER_MATCHING_NAME;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Returns true if the period is relevant for the carpool planning. This variant works on the already
+	 * extracted attributes, so the timetable can be filtered while it is parsed.
+	 * 
+	 * @param code the code of the period (may be null)
+	 * @param isOnCallSubstitution true if one of the subjects is the on-call-substitution
+	 * @param teacherMatch the combined flags of {@link #getTeacherMatch(String, String, String)}
+	 * @return true if the period is relevant for the carpool planning. False if not.
+	 */
+	public static boolean isPeriodRelevant(String code, boolean isOnCallSubstitution, int teacherMatch) {
 		// class trips, excursions, etc. are marked with the code "irregular"
-		if ("irregular".equals(period.code)) {
+		if ("irregular".equals(code)) {
 			return false;
 		}
-		boolean foundDifferentOrgname = false;
-		boolean foundMatchingName = false;
-		for (Teacher teacher : period.te) {
-			if (teacher.orgname != null) {
-				if (teacher.orgname.equals(initials)) {
-					// the period is handled by the specified teacher
-					foundMatchingName = true;
-				} else {
-					// the period is only handled temporarily by the specified teacher 
-					foundDifferentOrgname = true;
-				}
-			} else if (teacher.name != null && teacher.name.equals(initials)) {
-				// the period is handled by the specified teacher
-				foundMatchingName = true;
-			}
-		}
-		boolean isIrrelevant = (foundDifferentOrgname && !foundMatchingName) || period.isOnCallSubstitution();
+		boolean foundMatchingName = (teacherMatch & TEACHER_MATCHING_NAME) != 0;
+		boolean foundDifferentOrgname = (teacherMatch & TEACHER_DIFFERENT_ORGNAME) != 0;
+		boolean isIrrelevant = (foundDifferentOrgname && !foundMatchingName) || isOnCallSubstitution;
 		return !isIrrelevant;
 	}
 	
@@ -129,7 +164,7 @@ public class TimetableHelper {
 	
 	private static int getDateNumber(int dayNumber) {
 		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd");
-		LocalDate startDate = LocalDate.parse(String.valueOf(Controller.referenceWeekStartDate), dtf);
+		LocalDate startDate = LocalDate.parse(String.valueOf(Controller.getReferenceWeekStartDate()), dtf);
 		int daysToAdd = dayNumber - 1;
 		LocalDate targetDate = startDate.plusDays(daysToAdd);
         String formattedDate = targetDate.format(dtf);
@@ -140,8 +175,8 @@ public class TimetableHelper {
 	private static int getDaysBetweenDateAndReferenceWeekStartDate(int dateNumber) {
 		DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd");
 		LocalDate dateObj = LocalDate.parse(String.valueOf(dateNumber), dtf);
-		LocalDate startDate = LocalDate.parse(String.valueOf(Controller.referenceWeekStartDate), dtf);
-		int daysBetween = (int) java.time.Period.between(startDate, dateObj).getDays();
+		LocalDate startDate = LocalDate.parse(String.valueOf(Controller.getReferenceWeekStartDate()), dtf);
+		int daysBetween = (int) ChronoUnit.DAYS.between(startDate, dateObj);
 		return daysBetween;
 	}
 	/**
@@ -149,10 +184,13 @@ public class TimetableHelper {
 	 * this method returns the day of the week.
 	 * 
 	 * @param date the date integer
-	 * @return the day of the week enum
+	 * @return the day of the week enum or null if the date is on a weekend or outside of the A and B week
 	 */
 	private static DayOfWeekABCombo getDayOfWeekABCombo(int dateNumber) {
 		int number = getDaysBetweenDateAndReferenceWeekStartDate(dateNumber);
+		if (number < 0 || number >= 14 || number % 7 >= Util.weekdays.size()) {
+			return null;
+		}
 		DayOfWeek dow = Util.weekdays.get(number % 7);
 		boolean isA = number < 7;
 		return new DayOfWeekABCombo(dow, isA);
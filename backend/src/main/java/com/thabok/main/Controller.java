@@ -19,6 +19,7 @@ import com.thabok.entities.PartyTuple;
 import com.thabok.entities.Person;
 import com.thabok.entities.Reason;
 import com.thabok.helper.AlternativeDriverHelper;
+import com.thabok.helper.DayPlanInputBuilder;
 import com.thabok.helper.PartyHelper;
 import com.thabok.helper.PlanOptimizationHelper;
 import com.thabok.helper.TimetableHelper;
@@ -26,7 +27,27 @@ import com.thabok.util.Util;
 
 public class Controller {
 
-    public static int referenceWeekStartDate;
+    /**
+     * Start date of the reference (A) week of the plan that is calculated by the current thread (e.g. 20210830)
+     */
+    private static final ThreadLocal<Integer> referenceWeekStartDate = ThreadLocal.withInitial(() -> 0);
+
+    public static int getReferenceWeekStartDate() {
+        return referenceWeekStartDate.get();
+    }
+
+    public static void setReferenceWeekStartDate(int startDate) {
+        referenceWeekStartDate.set(startDate);
+    }
+
+    /**
+     * Time and allocations per phase of all plans calculated by this controller
+     */
+    private final PhaseProfiler profiler = new PhaseProfiler();
+
+    public PhaseProfiler getProfiler() {
+        return profiler;
+    }
 
     /**
      * Entry point to calulcate a week plan based on a given preset
@@ -45,8 +66,17 @@ public class Controller {
     }
     
     public MasterPlan calculateWeekPlan(List<Person> persons, MasterPlan preset) throws Exception {
+    	return calculateWeekPlan(persons, preset, null);
+    }
+    
+    /**
+     * Entry point to calculate a week plan with precomputed time slots (see {@link DayPlanInputBuilder})
+     */
+    public MasterPlan calculateWeekPlan(List<Person> persons, MasterPlan preset, DayPlanInputBuilder inputBuilder) throws Exception {
         
-        MasterPlan theMasterPlan = new MasterPlan(persons, preset);
+        profiler.startCandidate();
+        MasterPlan theMasterPlan = new MasterPlan(persons, preset, inputBuilder);
+        profiler.endPhase(PhaseProfiler.Phase.INIT);
         
         /*
          * At this point, we have the following state  (not necessarily for every day):
@@ -60,12 +90,14 @@ public class Controller {
          * before the first lesson).
          */
         AlternativeDriverHelper.findAlternativeForSirDrivesALots(theMasterPlan);
+        profiler.endPhase(PhaseProfiler.Phase.ALTERNATIVE_DRIVERS);
         
         
         /*
          * Next up, we add people to existing parties _if possible_ and create new parties _when needed_
          */
         coreAlgorithm(theMasterPlan);
+        profiler.endPhase(PhaseProfiler.Phase.CORE);
         
         /*
          * Fill add drives for lazy drivers while trying to optimize:
@@ -73,6 +105,7 @@ public class Controller {
          * - additional parties on days where it's tight
          */
         addPartiesForLazyDrivers(theMasterPlan);
+        profiler.endPhase(PhaseProfiler.Phase.LAZY_DRIVERS);
         
         /*
          * Once we've done everything we can to make sure, no one drives more often than needed
@@ -81,14 +114,17 @@ public class Controller {
 	    // FIXME: currently ignores people's sizes (too many tall people in small cars)
         // FIXME: currently doesn't try to keep passengers with the same driver between A & B week (if possible)
         balancePassengersInCars(theMasterPlan);
+        profiler.endPhase(PhaseProfiler.Phase.BALANCE_PASSENGERS);
         
         /*
          * Printy printy all the stuffy stuffs
          */
-        Util.out.println();
-		Util.out.println();
+        Util.out().println();
+		Util.out().println();
         Util.printDrivingDaysAbMap(theMasterPlan);     
         Util.summarizeNumberOfDrives(theMasterPlan);
+        profiler.endPhase(PhaseProfiler.Phase.REPORTING);
+        profiler.endCandidate();
         return theMasterPlan;
     }
 
@@ -120,7 +156,7 @@ public class Controller {
             Party partyBack  = PartyHelper.getParty(dayPlan, lowNodsPerson, true);
             PartyHelper.removePersonFromParties(lowNodsPerson, partyThere, partyBack);
             PartyHelper.addSoloParty(dayPlan, lowNodsPerson, theMasterPlan.inputsPerDay, "addPartiesForLazyDrivers", Reason.LAZY_DRIVER);
-            Util.out.println("Creating lazy driver party for " + lowNodsPerson + " on " + dayPlan.getDayOfWeekABCombo());
+            Util.out().println("Creating lazy driver party for " + lowNodsPerson + " on " + dayPlan.getDayOfWeekABCombo());
         }
     }
     
@@ -260,13 +296,13 @@ public class Controller {
         while (coveredPersons.size() < theMasterPlan.persons.size()) {
             List<Person> frequentDriversSortedDesc = nods.getPersonsSortedByNumberOfDrive(false);
             Person person = Util.getNextUnhandledDriver(frequentDriversSortedDesc, coveredPersons);
-            Util.out.println(String.format("\n>>> %s (%s/%s) <<<\n", person, (coveredPersons.size() + 1), theMasterPlan.persons.size()));
+            Util.out().println(String.format("\n>>> %s (%s/%s) <<<\n", person, (coveredPersons.size() + 1), theMasterPlan.persons.size()));
             // first process missing mirror days in case 'person' is picked to start their own party 
             for (DayPlan dp : Util.getMissingMirrorDays(theMasterPlan, person)) {
                 findOrCreateParty(theMasterPlan, nods, coveredPersons, frequentDriversSortedDesc, person, dp.getDayOfWeekABCombo(), "coreAlgorithm > findOrCreateParty > MissingMirrorDays");
             }
             // iterate over the days
-            for (DayOfWeekABCombo combo : Util.weekdayListAB) {
+            for (DayOfWeekABCombo combo : Util.getWeekdayListAB()) {
                 findOrCreateParty(theMasterPlan, nods, coveredPersons, frequentDriversSortedDesc, person, combo, "coreAlgorithm > findOrCreateParty > RemainingDays");
             }
             // add frequentDriverPerson to covered persons
@@ -290,8 +326,8 @@ public class Controller {
             return;
         }
         nods.update(theMasterPlan);
-        Util.out.print(String.format("[%s] Trying to place %s (%s): ", combo, person, nods.getNumberOfDrives().get(person)));
-        Util.out.println("[" + (!((partyThere != null)) ? "-->" : "   ") + "|" + (!((partyBack != null)) ? "<--" : "   ") + "]");
+        Util.out().print(String.format("[%s] Trying to place %s (%s): ", combo, person, nods.getNumberOfDrives().get(person)));
+        Util.out().println("[" + (!((partyThere != null)) ? "-->" : "   ") + "|" + (!((partyBack != null)) ? "<--" : "   ") + "]");
         
         // try to find parties for this person
         for (PartyTuple pt : dayPlan.getPartyTuples()) {
@@ -315,9 +351,9 @@ public class Controller {
         
         // if not possible -> find 1-2 persons who can create a party
         if ((partyThere == null) || (partyBack == null)) {
-            if (partyThere == null) Util.out.println("  - Didn't find a party to join for the morning.");
-            if (partyBack == null) Util.out.println("  - Didn't find a party to join for the afternoon.");
-            Util.out.println("  - Searching for a suitable person to start a new party...");
+            if (partyThere == null) Util.out().println("  - Didn't find a party to join for the morning.");
+            if (partyBack == null) Util.out().println("  - Didn't find a party to join for the afternoon.");
+            Util.out().println("  - Searching for a suitable person to start a new party...");
             PartyHelper.createPartiesThisPersonCanJoin(theMasterPlan, theMasterPlan.inputsPerDay, nods, person, dayPlan, partyThere, partyBack, reasonPhrase);
         }
     }
@@ -331,11 +367,11 @@ public class Controller {
             boolean isAvailable = PartyHelper.partyIsAvailable(parties[0]) && parties[0].hasAFreeSeat();
             if (parties[0].getTime() == time && isAvailable) {
                 parties[0].addPassenger(person, reasonPhrase);
-                Util.out.println(String.format("  - %s can ride with %s in the %s", person, pt.getDriver(), (isWayBack ? "afternoon" : "morning")));
+                Util.out().println(String.format("  - %s can ride with %s in the %s", person, pt.getDriver(), (isWayBack ? "afternoon" : "morning")));
             } else if (parties[1] == null && Util.isTimeDifferenceAcceptable(parties[0].getTime(), time) && isAvailable) {
                 parties[1] = parties[0];
                 parties[0] = null;
-                Util.out.println(String.format("  - %s can ride with %s in the %s (if nothing better comes up: %s minutes waiting time)",
+                Util.out().println(String.format("  - %s can ride with %s in the %s (if nothing better comes up: %s minutes waiting time)",
                         person, pt.getDriver(), (isWayBack ? "afternoon" : "morning"), Util.getTimeDifference(parties[1].getTime(), time)));
                 
             } else {
@@ -0,0 +1,189 @@
+package com.thabok.main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.thabok.entities.PlanProfile;
+import com.thabok.util.JfrEvents;
+import com.thabok.util.Metrics;
+import com.thabok.util.Util;
+
+/**
+ * Measures the time and the allocated bytes of the phases of {@link Controller#calculateWeekPlan(List,
+ * com.thabok.entities.MasterPlan, com.thabok.helper.DayPlanInputBuilder)} and sums them up over all candidates
+ * of a calculation. A profiler belongs to one controller and is only used by the calculating thread.
+ * <br><br>
+ * The durations are also recorded in the histogram planner_week_plan_phase_seconds (see {@link Metrics}).
+ * The following system properties can be used for configuration:
+ * <ul>
+ * <li>planner.profile.allocations: count the allocated bytes per phase (default: true, if supported by the JVM)</li>
+ * <li>planner.profile.sampleEvery: keep the timing of every n-th candidate (default: 0, no samples)</li>
+ * <li>planner.profile.maxSamples: max. number of kept candidates (default: 100)</li>
+ * </ul>
+ * @author thabok
+ */
+public class PhaseProfiler {
+
+	public enum Phase {
+		INIT("init"),
+		ALTERNATIVE_DRIVERS("alternative_drivers"),
+		CORE("core"),
+		LAZY_DRIVERS("lazy_drivers"),
+		BALANCE_PASSENGERS("balance_passengers"),
+		REPORTING("reporting");
+
+		private final String label;
+		private final Metrics.Histogram duration;
+
+		Phase(String label) {
+			this.label = label;
+			this.duration = Metrics.histogram("planner_week_plan_phase_seconds", "Duration of the phases of calculateWeekPlan (per candidate)",
+					Metrics.DURATION_BUCKETS, "phase", label);
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+	private static final com.sun.management.ThreadMXBean allocationCounter = getAllocationCounter();
+	private static final int SAMPLE_EVERY = Util.getIntProperty("planner.profile.sampleEvery", 0);
+	private static final int MAX_SAMPLES = Util.getIntProperty("planner.profile.maxSamples", 100);
+
+	private final long[] nanos = new long[PHASES.length];
+	private final long[] maxNanos = new long[PHASES.length];
+	private final long[] allocatedBytes = new long[PHASES.length];
+	private final long[] calls = new long[PHASES.length];
+	private final long[] candidateNanos = new long[PHASES.length];
+	private final long[] candidateBytes = new long[PHASES.length];
+	private final List<PlanProfile.CandidateSample> samples = new ArrayList<>();
+	private int candidates;
+	private long phaseStart;
+	private long phaseStartBytes;
+	private JfrEvents.PhaseEvent phaseEvent;
+
+	/**
+	 * Starts the first phase of a candidate.
+	 */
+	public void startCandidate() {
+		phaseStartBytes = getAllocatedBytes();
+		phaseStart = System.nanoTime();
+		beginPhaseEvent();
+	}
+
+	/**
+	 * Ends the current phase, the next phase starts right away.
+	 */
+	public void endPhase(Phase phase) {
+		phaseEvent.end();
+		long now = System.nanoTime();
+		long bytes = getAllocatedBytes();
+		int i = phase.ordinal();
+		long duration = now - phaseStart;
+		long allocated = bytes - phaseStartBytes;
+		nanos[i] += duration;
+		maxNanos[i] = Math.max(maxNanos[i], duration);
+		allocatedBytes[i] += allocated;
+		calls[i]++;
+		candidateNanos[i] = duration;
+		candidateBytes[i] = allocated;
+		phase.duration.observeNanos(duration);
+		if (phaseEvent.shouldCommit()) {
+			phaseEvent.phase = phase.label;
+			phaseEvent.candidate = candidates + 1;
+			phaseEvent.commit();
+		}
+		// excludes the time of the measurement itself
+		phaseStartBytes = getAllocatedBytes();
+		phaseStart = System.nanoTime();
+		beginPhaseEvent();
+	}
+
+	/**
+	 * The event only records something while a flight recording with planner phases is running
+	 */
+	private void beginPhaseEvent() {
+		phaseEvent = new JfrEvents.PhaseEvent();
+		phaseEvent.begin();
+	}
+
+	/**
+	 * Ends the candidate (after the last phase), keeps its timing if it is sampled.
+	 */
+	public void endCandidate() {
+		candidates++;
+		if (SAMPLE_EVERY > 0 && candidates % SAMPLE_EVERY == 0 && samples.size() < MAX_SAMPLES) {
+			PlanProfile.CandidateSample sample = new PlanProfile.CandidateSample();
+			sample.candidate = candidates;
+			long total = 0;
+			for (Phase phase : PHASES) {
+				total += candidateNanos[phase.ordinal()];
+				sample.micros.put(phase.label, candidateNanos[phase.ordinal()] / 1e3);
+				if (allocationCounter != null) {
+					sample.allocatedBytes.put(phase.label, candidateBytes[phase.ordinal()]);
+				}
+			}
+			sample.totalMicros = total / 1e3;
+			samples.add(sample);
+		}
+		Arrays.fill(candidateNanos, 0);
+		Arrays.fill(candidateBytes, 0);
+	}
+
+	/**
+	 * @return the breakdown by phase of all candidates so far
+	 */
+	public PlanProfile getProfile() {
+		PlanProfile profile = new PlanProfile();
+		profile.candidates = candidates;
+		long totalNanos = 0;
+		long totalBytes = 0;
+		for (Phase phase : PHASES) {
+			totalNanos += nanos[phase.ordinal()];
+			totalBytes += allocatedBytes[phase.ordinal()];
+		}
+		profile.totalMillis = totalNanos / 1e6;
+		profile.allocatedBytes = allocationCounter != null ? totalBytes : -1;
+		for (Phase phase : PHASES) {
+			int i = phase.ordinal();
+			PlanProfile.Phase phaseProfile = new PlanProfile.Phase();
+			phaseProfile.name = phase.label;
+			phaseProfile.calls = calls[i];
+			phaseProfile.totalMillis = nanos[i] / 1e6;
+			phaseProfile.averageMicros = calls[i] == 0 ? 0 : nanos[i] / 1e3 / calls[i];
+			phaseProfile.maxMicros = maxNanos[i] / 1e3;
+			phaseProfile.share = totalNanos == 0 ? 0 : (double) nanos[i] / totalNanos;
+			phaseProfile.allocatedBytes = allocationCounter != null ? allocatedBytes[i] : -1;
+			phaseProfile.averageAllocatedBytes = allocationCounter == null ? -1 : calls[i] == 0 ? 0 : allocatedBytes[i] / calls[i];
+			profile.phases.add(phaseProfile);
+		}
+		profile.samples.addAll(samples);
+		return profile;
+	}
+
+	private static long getAllocatedBytes() {
+		return allocationCounter != null ? allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+	}
+
+	/**
+	 * @return the thread bean if it supports allocation counting (HotSpot) and it's enabled, otherwise null
+	 */
+	private static com.sun.management.ThreadMXBean getAllocationCounter() {
+		if (!Boolean.parseBoolean(System.getProperty("planner.profile.allocations", "true"))) {
+			return null;
+		}
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+			if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+				return allocationBean;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,560 @@
+package com.thabok.main;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.thabok.entities.CustomDay;
+import com.thabok.entities.DayPlan;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.NumberOfDrivesStatus;
+import com.thabok.entities.PartyTuple;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.entities.ProgressObject;
+import com.thabok.entities.TimingInfo;
+import com.thabok.helper.DayPlanInputBuilder;
+import com.thabok.helper.PlanOptimizationHelper;
+import com.thabok.helper.TimetableHelper;
+import com.thabok.untis.TimetableChangeTracker;
+import com.thabok.untis.TimetableFetcher;
+import com.thabok.untis.WebUntisAdapter;
+import com.thabok.untis.WebUntisSession;
+import com.thabok.util.JfrEvents;
+import com.thabok.util.Metrics;
+
+/**
+ * Calculates week plans: fetches and converts the timetables, searches the best plan and
+ * prepares the plan for the client. Used for the interactive requests as well as for the
+ * precomputed plans (see {@link PlanScheduler}).
+ * <br><br>
+ * The planning state of a calculation (e.g. {@link Controller#getReferenceWeekStartDate()}) is confined
+ * to the calculating thread, so several plans can be calculated at the same time.
+ * @author thabok
+ */
+public class PlanCalculator {
+
+	public static final int ITERATIONS_WITHOUT_IMPROVEMENT_LIMIT = 15000;
+
+	public static final String PHASE_FETCHING = "fetching";
+	public static final String PHASE_SEARCHING = "searching";
+	public static final String PHASE_CALCULATING = "calculating";
+	public static final String PHASE_DONE = "done";
+
+	/**
+	 * Min. time between two progress updates of the search (improvements are reported right away)
+	 */
+	private static final long PROGRESS_INTERVAL_MS = 100;
+
+	/**
+	 * Receives the progress of the calculation (value between 0 and 1, message, phase, scores, etc.).
+	 * The progress object is reused by the calculation, listeners must copy what they keep.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void update(ProgressObject progress);
+	}
+
+	/**
+	 * Number of running interactive calculations (background calculations yield to them)
+	 */
+	private static final AtomicInteger interactiveCalculations = new AtomicInteger();
+
+	/**
+	 * Plans of previous searches by input fingerprint, also merges concurrent searches with the same inputs
+	 */
+	private static final PlanResultCache resultCache = PlanResultCache.fromSystemProperties();
+
+	private static final Metrics.Counter candidates = Metrics.counter("planner_candidates_total", "Plan candidates calculated by the searches");
+	private static final Metrics.Counter searches = Metrics.counter("planner_searches_total", "Finished plan searches (including cancelled ones)");
+	private static final Metrics.Histogram improvementsPerSearch = Metrics.histogram("planner_improvements_per_search",
+			"Number of improvements of the best plan per search", new double[] { 0, 1, 2, 3, 5, 8, 13, 21, 34 });
+	private static final Metrics.Histogram searchDuration = Metrics.histogram("planner_search_duration_seconds",
+			"Duration of the plan searches", Metrics.DURATION_BUCKETS);
+	private static final Metrics.Histogram fetchDuration = Metrics.histogram("planner_calculation_phase_seconds",
+			"Duration of the phases of a plan calculation", Metrics.DURATION_BUCKETS, "phase", PHASE_FETCHING);
+	private static final Metrics.Histogram verifyDuration = Metrics.histogram("planner_calculation_phase_seconds",
+			"Duration of the phases of a plan calculation", Metrics.DURATION_BUCKETS, "phase", "verifying");
+
+	/**
+	 * Candidates per second of the latest search
+	 */
+	private static volatile double lastCandidatesPerSecond;
+
+	static {
+		Metrics.gauge("planner_candidates_per_second", "Candidates per second of the latest search", () -> lastCandidatesPerSecond);
+		Metrics.gauge("planner_interactive_calculations", "Running interactive calculations", () -> interactiveCalculations.get());
+		Metrics.counterFunction("plan_cache_hits_total", "Plans served from the result cache", () -> getResultCacheStat("hits"));
+		Metrics.counterFunction("plan_cache_misses_total", "Plan searches that were not found in the result cache", () -> getResultCacheStat("misses"));
+		Metrics.counterFunction("plan_cache_merged_total", "Plan requests that waited for an identical running search", () -> getResultCacheStat("merged"));
+		Metrics.gauge("plan_cache_hit_ratio", "(Hits + merged) / all requests of the result cache", () -> {
+			double hits = getResultCacheStat("hits") + getResultCacheStat("merged");
+			double all = hits + getResultCacheStat("misses");
+			return all == 0 ? 0 : hits / all;
+		});
+	}
+	private static final int MAX_CONVERTED_SCHEDULES = 2000;
+
+	/**
+	 * Converted schedules by person, reference week, timetable hash and custom times (see {@link #getScheduleKey(Person, int, long)}).
+	 * The schedules are only read after the conversion, so they can be shared by subsequent calculations.
+	 */
+	private static final Map<String, Map<Integer, TimingInfo>> convertedSchedules = new LinkedHashMap<>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, TimingInfo>> eldest) {
+			return size() > MAX_CONVERTED_SCHEDULES;
+		}
+	};
+
+	private final WebUntisSession session;
+	private final BooleanSupplier isCancelled;
+	private final ProgressListener progressListener;
+	private final ProgressObject progress = new ProgressObject();
+	private long lastProgressUpdate;
+	private List<String> changedTeachers = new ArrayList<>();
+
+	public PlanCalculator(BooleanSupplier isCancelled, ProgressListener progressListener) {
+		this(WebUntisAdapter.getInternalSession(), isCancelled, progressListener);
+	}
+
+	/**
+	 * @param session the WebUntis session that is used to fetch the timetables
+	 * @param isCancelled polled during the calculation, stops it if true
+	 * @param progressListener receives the progress of the calculation
+	 */
+	public PlanCalculator(WebUntisSession session, BooleanSupplier isCancelled, ProgressListener progressListener) {
+		this.session = session;
+		this.isCancelled = isCancelled;
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * @return true if an interactive calculation is running (e.g. while a plan is precomputed)
+	 */
+	public static boolean isPlannerRequested() {
+		return interactiveCalculations.get() > 0;
+	}
+
+	/**
+	 * Main method to calculate a week plan for the carpool party (fetch, convert, search, prepare for the client).
+	 *
+	 * @param inputData the persons, the reference week and an optional preset
+	 * @param precomputedPlans returns a precomputed plan for the input fingerprint (see {@link #getInputFingerprint(int, List)}) or null
+	 * @return the week plan
+	 * @throws Exception things can go wrong...
+	 */
+	public MasterPlan calculatePlan(PlanInputData inputData, Function<String, MasterPlan> precomputedPlans) throws Exception {
+		interactiveCalculations.incrementAndGet();
+		try {
+			List<Person> persons = inputData.persons;
+			DayPlanInputBuilder inputBuilder = prepare(persons, inputData.scheduleReferenceStartDate);
+
+			// at this point we should be at a progress value of 0.5 (50%)
+			Controller controller = new Controller();
+			MasterPlan mp;
+			if (inputData.preset == null) {
+				String fingerprint = getInputFingerprint(inputData.scheduleReferenceStartDate, persons);
+				MasterPlan precomputedPlan = precomputedPlans.apply(fingerprint);
+				if (precomputedPlan != null) {
+					updateProgress(PHASE_DONE, 1.0f, "Using the precomputed plan");
+					// the precomputed plan is shared by all requests for the week
+					return precomputedPlan.copyForRequest(changedTeachers);
+				}
+				// identical inputs as a previous or running search: same plan (shared with the other requests)
+				mp = resultCache.getOrSearch(fingerprint, isCancelled, () -> searchPlan(controller, persons, inputBuilder))
+						.copyForRequest(changedTeachers);
+			} else {
+				updateProgress(PHASE_CALCULATING, 0.5f, "Calculating plan with the given preset...");
+				mp = controller.calculateWeekPlan(persons, inputData.preset, inputBuilder);
+				finish(mp);
+				mp.profile = controller.getProfiler().getProfile();
+				mp.changedTeachers = changedTeachers;
+			}
+			updateProgress(PHASE_DONE, 1.0f, "Done");
+			return mp;
+		} finally {
+			interactiveCalculations.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Fetches the timetables concurrently, each timetable is converted and prepared for the
+	 * planning as soon as it arrives (overlaps with the requests that are still in flight).
+	 * The schedules of persons whose timetable and custom times haven't changed are reused.
+	 *
+	 * @return the builder for the planning inputs per day
+	 */
+	public DayPlanInputBuilder prepare(List<Person> persons, int scheduleReferenceStartDate) throws Exception {
+		Controller.setReferenceWeekStartDate(scheduleReferenceStartDate);
+		DayPlanInputBuilder inputBuilder = new DayPlanInputBuilder();
+		long fetchStart = System.currentTimeMillis();
+		long fetchStartNanos = System.nanoTime();
+		JfrEvents.PhaseEvent fetchEvent = new JfrEvents.PhaseEvent();
+		fetchEvent.begin();
+		int[] reusedSchedules = { 0 };
+		new TimetableFetcher().fetchTimetables(session, persons, scheduleReferenceStartDate, isCancelled,
+				(person, timetable, fetchedCount) -> {
+					if (timetable != null) {
+						String scheduleKey = getScheduleKey(person, scheduleReferenceStartDate, TimetableChangeTracker.hash(timetable));
+						Map<Integer, TimingInfo> schedule;
+						synchronized (convertedSchedules) {
+							schedule = convertedSchedules.get(scheduleKey);
+						}
+						if (schedule != null) {
+							reusedSchedules[0]++;
+						} else {
+							schedule = TimetableHelper.timetableToSchedule(person, timetable);
+							synchronized (convertedSchedules) {
+								convertedSchedules.put(scheduleKey, schedule);
+							}
+						}
+						person.schedule = schedule;
+						inputBuilder.add(person);
+					}
+					String msg = "Fetched timetable for " + person.firstName + " " + person.lastName + " (" + person.initials + ")";
+					float progressValue = (((float) fetchedCount) / persons.size()) * 0.5f;
+					updateProgress(PHASE_FETCHING, progressValue, msg);
+				});
+		fetchDuration.observeNanos(System.nanoTime() - fetchStartNanos);
+		commitPhaseEvent(fetchEvent, PHASE_FETCHING);
+		changedTeachers = getChangedTeachers(persons, scheduleReferenceStartDate, fetchStart);
+		System.out.println("Reused " + reusedSchedules[0] + " of " + persons.size() + " converted schedules, changed timetables: " + changedTeachers);
+		return inputBuilder;
+	}
+
+	/**
+	 * @return the initials of the persons whose timetable changed during the last {@link #prepare(List, int)}
+	 */
+	public List<String> getChangedTeachers() {
+		return changedTeachers;
+	}
+
+	private static List<String> getChangedTeachers(List<Person> persons, int scheduleReferenceStartDate, long since) {
+		Set<String> initials = new HashSet<>();
+		persons.forEach(p -> initials.add(p.initials));
+		List<String> changed = new ArrayList<>();
+		for (Map<String, Object> change : WebUntisAdapter.getTimetableChanges(scheduleReferenceStartDate, since)) {
+			if (initials.contains(change.get("initials"))) {
+				changed.add((String) change.get("initials"));
+			}
+		}
+		Collections.sort(changed);
+		return changed;
+	}
+
+	/**
+	 * The conversion of a timetable into a schedule depends on the reference week, the timetable and the
+	 * custom start and end times of the person.
+	 */
+	private static String getScheduleKey(Person person, int scheduleReferenceStartDate, long timetableHash) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(person.initials).append('|').append(scheduleReferenceStartDate).append('|').append(timetableHash);
+		for (Map.Entry<Integer, CustomDay> customDay : new TreeMap<>(person.customDays).entrySet()) {
+			sb.append('|').append(customDay.getKey()).append(':')
+					.append(customDay.getValue().customStart).append('-').append(customDay.getValue().customEnd);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a hash of everything a plan depends on: the reference week and the persons including their
+	 * preferences and converted schedules (must be called after {@link #prepare(List, int)}).
+	 * The order of the persons doesn't matter.
+	 */
+	public static String getInputFingerprint(int scheduleReferenceStartDate, List<Person> persons) {
+		List<Person> sortedPersons = new ArrayList<>(persons);
+		sortedPersons.sort((p1, p2) -> String.valueOf(p1.initials).compareTo(String.valueOf(p2.initials)));
+		Gson gson = new Gson();
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(String.valueOf(scheduleReferenceStartDate).getBytes(StandardCharsets.UTF_8));
+			for (Person person : sortedPersons) {
+				digest.update(canonicalize(gson.toJsonTree(person)).toString().getBytes(StandardCharsets.UTF_8));
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns a copy of the json element with sorted object keys (maps like the custom days may arrive in any order)
+	 */
+	private static JsonElement canonicalize(JsonElement element) {
+		if (element.isJsonObject()) {
+			Map<String, JsonElement> members = new TreeMap<>();
+			for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+				members.put(member.getKey(), canonicalize(member.getValue()));
+			}
+			JsonObject sorted = new JsonObject();
+			members.forEach(sorted::add);
+			return sorted;
+		}
+		if (element.isJsonArray()) {
+			JsonArray array = new JsonArray();
+			element.getAsJsonArray().forEach(value -> array.add(canonicalize(value)));
+			return array;
+		}
+		return element;
+	}
+
+	/**
+	 * Searches the best plan, verifies it and prepares it for the client (see {@link #finish(MasterPlan)}).
+	 */
+	private MasterPlan searchPlan(Controller controller, List<Person> persons, DayPlanInputBuilder inputBuilder) throws Exception {
+		MasterPlan mp = findBestWeekPlan(controller, persons, inputBuilder, ITERATIONS_WITHOUT_IMPROVEMENT_LIMIT);
+		return verifyAndFinish(controller, mp);
+	}
+
+	/**
+	 * Calculates the winning plan once more (for debugging, tracability, etc.) and checks that it matches,
+	 * prepares it for the client (see {@link #finish(MasterPlan)}) and adds the profile of the calculation.
+	 *
+	 * @param controller the controller that calculated the plan
+	 * @param mp the winning plan
+	 * @return the plan
+	 * @throws IllegalStateException if the recalculated plan doesn't match
+	 */
+	MasterPlan verifyAndFinish(Controller controller, MasterPlan mp) throws Exception {
+		long verifyStart = System.nanoTime();
+		JfrEvents.PhaseEvent verifyEvent = new JfrEvents.PhaseEvent();
+		verifyEvent.begin();
+		MasterPlan mp2 = controller.calculateWeekPlan(mp);
+		if (!mp.toString().equals(mp2.toString())) {
+			throw new IllegalStateException("Traceability plan doesn't match originally calculated plan!");
+		}
+		finish(mp);
+		verifyDuration.observeNanos(System.nanoTime() - verifyStart);
+		commitPhaseEvent(verifyEvent, "verifying");
+		mp.profile = controller.getProfiler().getProfile();
+		return mp;
+	}
+
+	/**
+	 * @return the number of cached plans, hits, misses, etc. of the result cache
+	 */
+	public static Map<String, Object> getResultCacheStats() {
+		return resultCache.getStats();
+	}
+
+	private static void commitPhaseEvent(JfrEvents.PhaseEvent event, String phase) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = phase;
+			event.candidate = -1;
+			event.commit();
+		}
+	}
+
+	private static double getResultCacheStat(String key) {
+		return ((Number) resultCache.getStats().get(key)).doubleValue();
+	}
+
+	/**
+	 * Attempts to find the best plan out of a randomly generated set of plans. Uses
+	 * the metrics gt4 and gt5, indicating the number of persons who drive more than
+	 * 4 / 5 times respectivly. These metrics are being minimized.
+	 *
+	 * Additional property to minimize (prioritized):
+	 * (1) People driving on a day that violates their customPrefs while having passengers
+	 * (2) ...
+	 */
+	public MasterPlan findBestWeekPlan(Controller controller, List<Person> persons, DayPlanInputBuilder inputBuilder, int iterationsWithoutImprovementLimit) throws Exception {
+		MasterPlan mp = null;
+		// no upper limit: big schools can have 100 or more persons with more than four drives
+		int lowestNoPersonsWithMoreThan4Drives = Integer.MAX_VALUE;
+		int lowestNoPersonsWithMoreThan5Drives = Integer.MAX_VALUE;
+		int lowestNoInvoluntaryDrives = Integer.MAX_VALUE;
+		int estimatedTotal = Math.round(iterationsWithoutImprovementLimit * 1.3f);
+		int iterationsWithoutImprovement = 0;
+		int i = 0;
+		int improvements = 0;
+		long searchStart = System.nanoTime();
+		JfrEvents.SearchEvent searchEvent = new JfrEvents.SearchEvent();
+		searchEvent.begin();
+		progress.phase = PHASE_SEARCHING;
+		progress.message = "Calculating plan...";
+		try {
+			while (iterationsWithoutImprovement < iterationsWithoutImprovementLimit) {
+				// whenever the user cancels: return best candidate
+				if (isCancelled.getAsBoolean()) {
+					return mp;
+				}
+
+				Collections.shuffle(persons);
+				float progressValue = 0.5f + ((float) i++ / estimatedTotal) * 0.5f;
+				MasterPlan mpCandidate = controller.calculateWeekPlan(persons, null, inputBuilder);
+				candidates.increment();
+				int gt4 = calculateNumberOfPersonsAboveThreshold(mpCandidate, 4);
+				int gt5 = calculateNumberOfPersonsAboveThreshold(mpCandidate, 5);
+				int involuntaryDrives = calculateNumberOfInvoluntaryDrives(mpCandidate);
+				boolean improved = true;
+				if (gt4 < lowestNoPersonsWithMoreThan4Drives) {
+					System.out.println("Found a better plan (gt4): " + lowestNoPersonsWithMoreThan4Drives + " -> " + gt4);
+					lowestNoPersonsWithMoreThan4Drives = gt4;
+					lowestNoPersonsWithMoreThan5Drives = gt5;
+					mp = mpCandidate;
+					iterationsWithoutImprovement = 0;
+				} else if (gt4 == lowestNoPersonsWithMoreThan4Drives && gt5 < lowestNoPersonsWithMoreThan5Drives) {
+					System.out.println("Found a better plan (gt5): " + lowestNoPersonsWithMoreThan5Drives + " -> " + gt5);
+					lowestNoPersonsWithMoreThan4Drives = gt4;
+					lowestNoPersonsWithMoreThan5Drives = gt5;
+					mp = mpCandidate;
+					iterationsWithoutImprovement = 0;
+				} else if (gt4 == lowestNoPersonsWithMoreThan4Drives && gt5 == lowestNoPersonsWithMoreThan5Drives && involuntaryDrives < lowestNoInvoluntaryDrives) {
+					System.out.println("Found a better plan (invol.drives): " + lowestNoInvoluntaryDrives + " -> " + involuntaryDrives);
+					lowestNoInvoluntaryDrives = involuntaryDrives;
+					mp = mpCandidate;
+					iterationsWithoutImprovement = 0;
+				} else {
+					iterationsWithoutImprovement++;
+					improved = false;
+				}
+				if (improved) {
+					improvements++;
+					JfrEvents.ImprovementEvent improvementEvent = new JfrEvents.ImprovementEvent();
+					if (improvementEvent.shouldCommit()) {
+						improvementEvent.candidate = i;
+						improvementEvent.personsWithMoreThanFourDrives = lowestNoPersonsWithMoreThan4Drives;
+						improvementEvent.personsWithMoreThanFiveDrives = lowestNoPersonsWithMoreThan5Drives;
+						improvementEvent.involuntaryDrives = lowestNoInvoluntaryDrives < Integer.MAX_VALUE ? lowestNoInvoluntaryDrives : -1;
+						improvementEvent.commit();
+					}
+					progress.message = "Calculating plan... (persons with more than four drives: " + lowestNoPersonsWithMoreThan4Drives + ")";
+					progress.bestPersonsWithMoreThanFourDrives = lowestNoPersonsWithMoreThan4Drives;
+					progress.bestPersonsWithMoreThanFiveDrives = lowestNoPersonsWithMoreThan5Drives;
+					progress.bestInvoluntaryDrives = lowestNoInvoluntaryDrives < Integer.MAX_VALUE ? lowestNoInvoluntaryDrives : -1;
+				}
+				long now = System.currentTimeMillis();
+				if (improved || now - lastProgressUpdate >= PROGRESS_INTERVAL_MS) {
+					progress.value = progressValue;
+					progress.iterations = i;
+					progress.iterationsPerSecond = i * 1e9f / Math.max(1, System.nanoTime() - searchStart);
+					lastProgressUpdate = now;
+					progressListener.update(progress);
+				}
+			}
+			return mp;
+		} finally {
+			long duration = System.nanoTime() - searchStart;
+			searches.increment();
+			searchDuration.observeNanos(duration);
+			improvementsPerSearch.observe(improvements);
+			lastCandidatesPerSecond = i * 1e9 / Math.max(1, duration);
+			searchEvent.end();
+			if (searchEvent.shouldCommit()) {
+				searchEvent.persons = persons.size();
+				searchEvent.candidates = i;
+				searchEvent.improvements = improvements;
+				searchEvent.cancelled = isCancelled.getAsBoolean();
+				searchEvent.commit();
+			}
+		}
+	}
+
+	private void updateProgress(String phase, float value, String message) {
+		progress.phase = phase;
+		progress.value = value;
+		progress.message = message;
+		lastProgressUpdate = System.currentTimeMillis();
+		progressListener.update(progress);
+	}
+
+	/**
+	 * Prepares the calculated plan for the client: stores the times per day plan and removes the
+	 * data that is only needed for the planning.
+	 */
+	public static void finish(MasterPlan mp) {
+		storePersonsTimesPerDayPlan(mp);
+		// impact analysis of fix for issue #11 (PlanOptimizationHelper)
+		PlanOptimizationHelper.printTightnessOverview(mp);
+
+		clearDataFromPlan(mp);
+	}
+
+	// package-private for the benchmarks (backend/benchmarks)
+	static int calculateNumberOfInvoluntaryDrives(MasterPlan mpCandidate) {
+		int numberOfInvoluntaryDrives = 0;
+		for (DayPlan dayPlan : mpCandidate.getDayPlans().values()) {
+			for (PartyTuple tuple : dayPlan.getPartyTuples()) {
+				Person driver = tuple.getDriver();
+				CustomDay customDay = driver.customDays.get(dayPlan.getDayOfWeekABCombo().getUniqueNumber());
+				boolean passengersHomebound = !tuple.getPartyThere().getPassengers().isEmpty();
+				boolean passengersSchoolbound = !tuple.getPartyBack().getPassengers().isEmpty();
+				if (customDay != null && customDay.drivingSkip && (passengersSchoolbound || passengersHomebound)) {
+					// unvoluntary drive with passengers
+					numberOfInvoluntaryDrives++;
+				}
+			}
+		}
+		return numberOfInvoluntaryDrives;
+	}
+
+	static int calculateNumberOfPersonsAboveThreshold(MasterPlan mpCandidate, int threshold) {
+		NumberOfDrivesStatus nods = new NumberOfDrivesStatus(mpCandidate);
+		int gtThreshold = 0;
+		for (int noDrives : nods.getNumberOfDrives().values()) {
+			if (noDrives > threshold) gtThreshold++;
+		}
+		return gtThreshold;
+	}
+
+	private static void clearDataFromPerson(Person p) {
+		p.schedule = null;
+		p.customDays = null;
+	}
+
+	/**
+	 * Collect time infos per person for each day plan
+	 * this data is required to correctly adapt the party times when passengers are moved
+	 **/
+	private static void storePersonsTimesPerDayPlan(MasterPlan mp) {
+		for (DayPlan dp : mp.getDayPlans().values()) {
+			for (Person p : mp.persons) {
+				if (TimetableHelper.isPersonActiveOnThisDay(p, dp.getDayOfWeekABCombo())) {
+					TimingInfo timingInfo = TimetableHelper.getTimingInfoForDay(p, dp.getDayOfWeekABCombo());
+					dp.schoolboundTimesByInitials.put(p.initials, timingInfo.getStartTime());
+					dp.homeboundTimesByInitials.put(p.initials, timingInfo.getEndTime());
+				}
+			}
+		}
+	}
+
+	private static void clearDataFromPlan(MasterPlan mp) {
+		mp.persons = null;
+		mp.inputsPerDay = null;
+		mp.key = null;
+
+		for (DayPlan dp : mp.getDayPlans().values()) {
+			for (PartyTuple pt : dp.getPartyTuples()) {
+				clearDataFromPerson(pt.getPartyThere().getDriver());
+				pt.getPartyThere().getPassengers().forEach(p -> clearDataFromPerson(p));
+
+				clearDataFromPerson(pt.getPartyBack().getDriver());
+				pt.getPartyBack().getPassengers().forEach(p -> clearDataFromPerson(p));
+			}
+		}
+	}
+
+}
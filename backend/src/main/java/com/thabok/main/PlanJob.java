@@ -0,0 +1,156 @@
+package com.thabok.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.ProgressObject;
+
+/**
+ * A plan calculation that was submitted to the {@link PlanJobManager}. Each job has its own progress,
+ * cancellation flag and result, so several calculations can run at the same time without interfering.
+ * @author thabok
+ */
+public class PlanJob {
+
+	public enum State {
+		QUEUED, RUNNING, DONE, FAILED, CANCELLED
+	}
+
+	private final String id;
+	private final String ownerToken;
+	private final long submittedAt = System.currentTimeMillis();
+	private final ProgressPublisher progress = new ProgressPublisher();
+
+	private volatile State state = State.QUEUED;
+	private volatile long startedAt;
+	private volatile long finishedAt;
+	private volatile boolean cancelled;
+	private volatile MasterPlan result;
+	private volatile String error;
+	volatile Future<?> future;
+
+	PlanJob(String id, String ownerToken) {
+		this.id = id;
+		this.ownerToken = ownerToken;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the session token of the user who submitted the job
+	 */
+	public String getOwnerToken() {
+		return ownerToken;
+	}
+
+	/**
+	 * @return true if the job was submitted with the given session token
+	 */
+	public boolean isOwnedBy(String token) {
+		return token != null && token.equals(ownerToken);
+	}
+
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return the plan (also available if the job was cancelled during the search: best plan so far) or null
+	 */
+	public MasterPlan getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the error message of a failed job or null
+	 */
+	public String getError() {
+		return error;
+	}
+
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public boolean isFinished() {
+		return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+	}
+
+	/**
+	 * @return a copy of the current progress
+	 */
+	public ProgressObject getProgress() {
+		return progress.getProgress();
+	}
+
+	/**
+	 * @return receives the progress of the calculation and notifies the threads waiting for updates
+	 */
+	public ProgressPublisher getProgressPublisher() {
+		return progress;
+	}
+
+	/**
+	 * @return id, state, timestamps, progress and error message of the job
+	 */
+	public Map<String, Object> getStatus() {
+		ProgressObject currentProgress = getProgress();
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("id", id);
+		status.put("state", state);
+		status.put("submittedAt", submittedAt);
+		status.put("startedAt", startedAt);
+		status.put("finishedAt", finishedAt);
+		status.put("progress", currentProgress.value);
+		status.put("message", currentProgress.message);
+		status.put("phase", currentProgress.phase);
+		status.put("resultAvailable", result != null);
+		if (error != null) {
+			status.put("error", error);
+		}
+		return status;
+	}
+
+	/**
+	 * Requests the cancellation. A queued job doesn't start anymore, a running job stops the search
+	 * and keeps the best plan found so far.
+	 */
+	void cancel() {
+		cancelled = true;
+		Future<?> currentFuture = future;
+		if (state == State.QUEUED && currentFuture != null && currentFuture.cancel(false)) {
+			finish(State.CANCELLED, null, null);
+		}
+	}
+
+	void start() {
+		startedAt = System.currentTimeMillis();
+		state = State.RUNNING;
+	}
+
+	void finish(State finalState, MasterPlan plan, String errorMessage) {
+		result = plan;
+		error = errorMessage;
+		finishedAt = System.currentTimeMillis();
+		state = finalState;
+		// wakes up the progress streams
+		ProgressObject finalProgress = progress.getProgress();
+		finalProgress.phase = PlanCalculator.PHASE_DONE;
+		finalProgress.value = 1.0f;
+		finalProgress.message = finalState == State.DONE ? "Done" : finalState == State.CANCELLED ? "Cancelled" : "Failed: " + errorMessage;
+		progress.update(finalProgress);
+	}
+
+}
@@ -0,0 +1,251 @@
+package com.thabok.main;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.PlanInputData;
+import com.thabok.untis.WebUntisSession;
+import com.thabok.util.Metrics;
+import com.thabok.util.Util;
+
+/**
+ * Runs plan calculations as jobs on a fixed number of worker threads. A submitted job gets an id that
+ * is used to query its status, progress and result or to cancel it. Finished jobs are kept for a while,
+ * so the client can pick up the result.
+ * <br><br>
+ * The calculations are CPU-bound, so only a few run at the same time (on worker threads with a lower priority
+ * than the web requests). Further jobs wait in a bounded queue with a position and an expected wait time, a job
+ * that doesn't fit into the queue is rejected right away (RejectedExecutionException).
+ * <br><br>
+ * Configuration (system properties):
+ * <ul>
+ * <li>jobs.threads: number of plans that are calculated at the same time (default: number of cores - 1, at least 1)</li>
+ * <li>jobs.queueSize: number of jobs that can wait for a worker (default: 8)</li>
+ * <li>jobs.expectedRunSeconds: initial estimate of the duration of a job (default: 30), updated with the finished jobs</li>
+ * <li>jobs.retentionMinutes: time after which finished jobs are removed (default: 60)</li>
+ * </ul>
+ * @author thabok
+ */
+public class PlanJobManager {
+
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	/**
+	 * Weight of the latest job in the average duration
+	 */
+	private static final double DURATION_SMOOTHING = 0.3;
+
+	private final ThreadPoolExecutor executor;
+	private final int threads;
+	private final int queueSize;
+	private final long retentionMillis;
+	private volatile double averageRunMillis;
+	private final Metrics.Counter rejectedJobs = Metrics.counter("plan_jobs_rejected_total", "Plan jobs that were rejected because the queue was full");
+	private final Function<String, MasterPlan> precomputedPlans;
+	private final Map<String, PlanJob> jobs = new ConcurrentHashMap<>();
+
+	/**
+	 * @param threads the number of worker threads
+	 * @param queueSize the number of jobs that can wait for a worker
+	 * @param expectedRunSeconds initial estimate of the duration of a job
+	 * @param retentionMinutes time after which finished jobs are removed
+	 * @param precomputedPlans returns a precomputed plan by input fingerprint or null (see {@link PlanCalculator#calculatePlan(PlanInputData, Function)})
+	 */
+	public PlanJobManager(int threads, int queueSize, int expectedRunSeconds, int retentionMinutes, Function<String, MasterPlan> precomputedPlans) {
+		this.threads = Math.max(1, threads);
+		this.queueSize = Math.max(1, queueSize);
+		this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(this.queueSize), r -> {
+			Thread thread = new Thread(r, "plan-job-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			// the web requests (progress, status, etc.) stay responsive while all workers are busy
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+		this.averageRunMillis = TimeUnit.SECONDS.toMillis(Math.max(1, expectedRunSeconds));
+		this.retentionMillis = TimeUnit.MINUTES.toMillis(Math.max(1, retentionMinutes));
+		this.precomputedPlans = precomputedPlans;
+		Metrics.gauge("plan_jobs_queued", "Plan jobs waiting for a worker", () -> executor.getQueue().size());
+		Metrics.gauge("plan_jobs_running", "Plan jobs that are being calculated", () -> executor.getActiveCount());
+	}
+
+	public static PlanJobManager fromSystemProperties(Function<String, MasterPlan> precomputedPlans) {
+		return new PlanJobManager(
+				Util.getIntProperty("jobs.threads", Math.max(1, Runtime.getRuntime().availableProcessors() - 1)),
+				Util.getIntProperty("jobs.queueSize", 8),
+				Util.getIntProperty("jobs.expectedRunSeconds", 30),
+				Util.getIntProperty("jobs.retentionMinutes", 60),
+				precomputedPlans);
+	}
+
+	/**
+	 * Queues the calculation of a plan.
+	 *
+	 * @param session the WebUntis session of the user (used to fetch the timetables, its token owns the job)
+	 * @param inputData the persons, the reference week and an optional preset
+	 * @return the job (state: queued)
+	 * @throws RejectedExecutionException if all workers are busy and the queue is full
+	 */
+	public PlanJob submit(WebUntisSession session, PlanInputData inputData) {
+		if (inputData == null || inputData.persons == null || inputData.persons.isEmpty()) {
+			throw new IllegalArgumentException("No persons specified.");
+		}
+		removeExpiredJobs();
+		PlanJob job = new PlanJob(UUID.randomUUID().toString(), session.getToken());
+		jobs.put(job.getId(), job);
+		try {
+			job.future = executor.submit(() -> run(job, session, inputData));
+		} catch (RejectedExecutionException e) {
+			jobs.remove(job.getId());
+			rejectedJobs.increment();
+			throw new RejectedExecutionException("The planner is busy (" + executor.getActiveCount() + " running, "
+					+ executor.getQueue().size() + " queued jobs). Please try again in " + getRetryAfterSeconds() + " seconds.");
+		}
+		return job;
+	}
+
+	/**
+	 * @return the job or null if there is no such job (anymore)
+	 */
+	public PlanJob get(String id) {
+		return id != null ? jobs.get(id) : null;
+	}
+
+	/**
+	 * Cancels the job (see {@link PlanJob#cancel()}).
+	 *
+	 * @return the job or null if there is no such job (anymore)
+	 */
+	public PlanJob cancel(String id) {
+		PlanJob job = get(id);
+		if (job != null) {
+			job.cancel();
+			// frees the queue slot of a cancelled job right away
+			executor.purge();
+		}
+		return job;
+	}
+
+	/**
+	 * @return the job or null if there is no such job (anymore) or it belongs to another user
+	 */
+	public PlanJob get(String id, String ownerToken) {
+		PlanJob job = get(id);
+		return job != null && job.isOwnedBy(ownerToken) ? job : null;
+	}
+
+	/**
+	 * @return the status of the jobs of the user with the given session token (most recent first)
+	 */
+	public List<Map<String, Object>> getStatus(String ownerToken) {
+		removeExpiredJobs();
+		List<PlanJob> sortedJobs = new ArrayList<>();
+		jobs.values().stream().filter(job -> job.isOwnedBy(ownerToken)).forEach(sortedJobs::add);
+		sortedJobs.sort(Comparator.comparingLong(PlanJob::getSubmittedAt).reversed());
+		List<Map<String, Object>> status = new ArrayList<>();
+		sortedJobs.forEach(job -> status.add(getStatus(job)));
+		return status;
+	}
+
+	/**
+	 * @return the status of the job (see {@link PlanJob#getStatus()}), queued jobs also have their position in the
+	 * queue (1 = next) and the expected wait in seconds
+	 */
+	public Map<String, Object> getStatus(PlanJob job) {
+		Map<String, Object> status = job.getStatus();
+		if (job.getState() == PlanJob.State.QUEUED) {
+			int position = getQueuePosition(job);
+			status.put("queuePosition", position);
+			status.put("expectedWaitSeconds", getExpectedWaitSeconds(position));
+		}
+		return status;
+	}
+
+	/**
+	 * @return the position of the job among the queued jobs (1 = next) or 0 if it isn't queued
+	 */
+	public int getQueuePosition(PlanJob job) {
+		if (job.getState() != PlanJob.State.QUEUED) {
+			return 0;
+		}
+		return 1 + (int) jobs.values().stream()
+				.filter(other -> other.getState() == PlanJob.State.QUEUED && !other.isCancelled())
+				.filter(other -> other.getSubmittedAt() < job.getSubmittedAt()
+						|| (other.getSubmittedAt() == job.getSubmittedAt() && other.getId().compareTo(job.getId()) < 0))
+				.count();
+	}
+
+	/**
+	 * The workers take the queued jobs in rounds of {@link #threads} jobs, each round takes about the
+	 * average duration of the recent jobs.
+	 *
+	 * @return the expected time until the job at the given queue position starts
+	 */
+	public long getExpectedWaitSeconds(int position) {
+		if (position <= 0) {
+			return 0;
+		}
+		long rounds = (position + threads - 1) / threads;
+		return Math.round(rounds * averageRunMillis / 1000);
+	}
+
+	/**
+	 * @return the expected time until a queue slot is free (for the Retry-After header of rejected requests)
+	 */
+	public long getRetryAfterSeconds() {
+		return Math.max(1, Math.round(averageRunMillis / threads / 1000));
+	}
+
+	/**
+	 * @return the number of queued and running jobs
+	 */
+	public int getActiveJobCount() {
+		return (int) jobs.values().stream().filter(job -> !job.isFinished()).count();
+	}
+
+	private void run(PlanJob job, WebUntisSession session, PlanInputData inputData) {
+		if (job.isCancelled()) {
+			job.finish(PlanJob.State.CANCELLED, null, null);
+			return;
+		}
+		job.start();
+		long start = System.currentTimeMillis();
+		try {
+			PlanCalculator calculator = new PlanCalculator(session, job::isCancelled, job.getProgressPublisher());
+			MasterPlan plan = calculator.calculatePlan(inputData, precomputedPlans);
+			if (!job.isCancelled()) {
+				recordRunTime(System.currentTimeMillis() - start);
+			}
+			job.finish(job.isCancelled() ? PlanJob.State.CANCELLED : PlanJob.State.DONE, plan, null);
+		} catch (Throwable e) {
+			// also errors (e.g. OutOfMemoryError, StackOverflowError): the job must not stay in the state RUNNING
+			if (job.isCancelled()) {
+				job.finish(PlanJob.State.CANCELLED, null, null);
+			} else {
+				String message = e.getMessage() != null ? e.getMessage() : e.toString();
+				System.err.println("Plan job " + job.getId() + " failed: " + message);
+				job.finish(PlanJob.State.FAILED, null, message);
+			}
+		}
+	}
+
+	private synchronized void recordRunTime(long millis) {
+		averageRunMillis += DURATION_SMOOTHING * (millis - averageRunMillis);
+	}
+
+	private void removeExpiredJobs() {
+		long now = System.currentTimeMillis();
+		jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAt() > retentionMillis);
+	}
+
+}
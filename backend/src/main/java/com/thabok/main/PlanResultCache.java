@@ -0,0 +1,163 @@
+package com.thabok.main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import com.thabok.entities.MasterPlan;
+import com.thabok.util.Util;
+
+/**
+ * Cache for the results of the plan search, keyed by the input fingerprint (see
+ * {@link PlanCalculator#getInputFingerprint(int, java.util.List)}), so repeated requests with the same
+ * persons, preferences, schedules and reference week get the plan right away. Concurrent requests with
+ * the same inputs are merged: only the first one searches, the others wait for its result.
+ * <br><br>
+ * Results of cancelled searches are not cached. The number of entries is bounded (system property
+ * plans.cache.maxEntries, default: 20), the least recently used plans are evicted first.
+ * @author thabok
+ */
+public class PlanResultCache {
+
+	private static final long POLL_INTERVAL_MS = 100;
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, MasterPlan> plans;
+	private final Map<String, CompletableFuture<MasterPlan>> searchesInFlight = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder merged = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public PlanResultCache(int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, MasterPlan> eldest) {
+				boolean evict = size() > PlanResultCache.this.maxEntries;
+				if (evict) {
+					evictions.increment();
+				}
+				return evict;
+			}
+		};
+	}
+
+	public static PlanResultCache fromSystemProperties() {
+		return new PlanResultCache(Util.getIntProperty("plans.cache.maxEntries", 20));
+	}
+
+	/**
+	 * Returns the cached plan for the fingerprint, waits for a running search with the same fingerprint
+	 * or runs the search.
+	 *
+	 * @param fingerprint the input fingerprint
+	 * @param isCancelled the cancellation flag of the caller (a cancelled search isn't cached)
+	 * @param search searches the plan
+	 * @return the plan
+	 * @throws CancellationException if the caller was cancelled while waiting for another search
+	 * @throws Exception if the search failed
+	 */
+	public MasterPlan getOrSearch(String fingerprint, BooleanSupplier isCancelled, Callable<MasterPlan> search) throws Exception {
+		while (true) {
+			synchronized (plans) {
+				MasterPlan plan = plans.get(fingerprint);
+				if (plan != null) {
+					hits.increment();
+					return plan;
+				}
+			}
+			CompletableFuture<MasterPlan> ownSearch = new CompletableFuture<>();
+			CompletableFuture<MasterPlan> runningSearch = searchesInFlight.putIfAbsent(fingerprint, ownSearch);
+			if (runningSearch == null) {
+				misses.increment();
+				return search(fingerprint, isCancelled, search, ownSearch);
+			}
+			merged.increment();
+			MasterPlan plan = await(runningSearch, isCancelled);
+			if (plan != null) {
+				return plan;
+			}
+			// the other search was cancelled or failed: try again (cache, running search or own search)
+		}
+	}
+
+	private MasterPlan search(String fingerprint, BooleanSupplier isCancelled, Callable<MasterPlan> search,
+			CompletableFuture<MasterPlan> ownSearch) throws Exception {
+		MasterPlan cachedPlan = null;
+		try {
+			// a cancelled search returns the best plan so far to the caller, but it isn't shared
+			MasterPlan plan = search.call();
+			if (plan != null && !isCancelled.getAsBoolean()) {
+				cachedPlan = plan;
+				synchronized (plans) {
+					plans.put(fingerprint, plan);
+				}
+			}
+			return plan;
+		} finally {
+			searchesInFlight.remove(fingerprint, ownSearch);
+			// null tells the waiting callers to try again
+			ownSearch.complete(cachedPlan);
+		}
+	}
+
+	/**
+	 * @return the plan of the other search or null if it was cancelled or failed
+	 */
+	private static MasterPlan await(CompletableFuture<MasterPlan> runningSearch, BooleanSupplier isCancelled) throws InterruptedException {
+		while (true) {
+			if (isCancelled.getAsBoolean()) {
+				throw new CancellationException("The operation was cancelled by the user.");
+			}
+			try {
+				return runningSearch.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// keep waiting
+			} catch (ExecutionException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of cached plans, hits, misses, merged requests and evictions
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		synchronized (plans) {
+			stats.put("plans", plans.size());
+		}
+		stats.put("maxEntries", maxEntries);
+		stats.put("searchesInFlight", searchesInFlight.size());
+		stats.put("hits", hits.sum());
+		stats.put("misses", misses.sum());
+		stats.put("merged", merged.sum());
+		stats.put("evictions", evictions.sum());
+		return stats;
+	}
+
+	/**
+	 * Removes all cached plans.
+	 *
+	 * @return the number of removed plans
+	 */
+	public int clear() {
+		synchronized (plans) {
+			int size = plans.size();
+			plans.clear();
+			return size;
+		}
+	}
+
+}
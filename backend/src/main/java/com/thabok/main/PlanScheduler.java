@@ -0,0 +1,310 @@
+package com.thabok.main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.helper.DayPlanInputBuilder;
+import com.thabok.untis.WebUntisAdapter;
+import com.thabok.untis.WebUntisSession;
+import com.thabok.util.Util;
+
+/**
+ * Optional background scheduler that precomputes the plans of the upcoming reference weeks for a saved
+ * persons list. The persons list is bound to the session of the user who saved it: only while this session
+ * is logged in, the scheduler periodically fetches the timetables with it (which also keeps the timetable
+ * cache warm) and runs the plan search with low priority. After the logout (or when the idle session is
+ * removed) nothing is precomputed until the list is saved again. A list that is loaded from the input file
+ * at startup has no session yet, the precomputation starts when a user saves it again. An interactive request whose inputs
+ * (persons, preferences, timetables, reference week) match a precomputed plan gets that plan right away.
+ * <br><br>
+ * The background calculation yields to interactive requests: it is cancelled as soon as an interactive
+ * calculation runs and is repeated shortly after. Plans are only recalculated if the inputs have changed.
+ * <br><br>
+ * Configuration (system properties):
+ * <ul>
+ * <li>scheduler.enabled: enables the scheduler (default: false)</li>
+ * <li>scheduler.intervalMinutes: time between two runs (default: 60)</li>
+ * <li>scheduler.weeks: number of upcoming reference weeks to precompute (default: 2)</li>
+ * <li>scheduler.inputFile: file to store the persons list in (default: scheduler-input.json)</li>
+ * </ul>
+ * @author thabok
+ */
+public class PlanScheduler {
+
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final int RETRY_DELAY_MINUTES = 1;
+
+	private final boolean enabled;
+	private final int intervalMinutes;
+	private final int weeks;
+	private final Path inputFile;
+	private final Gson gson = new Gson();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "plan-scheduler");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	});
+
+	/**
+	 * The saved input and the session that saved it
+	 */
+	private volatile SavedInput savedInput;
+
+	/**
+	 * Precomputed plans by input fingerprint (see {@link PlanCalculator#getInputFingerprint(int, List)})
+	 */
+	private final Map<String, PrecomputedPlan> precomputedPlans = new LinkedHashMap<>();
+
+	private volatile boolean running;
+	private volatile long lastRun;
+	private volatile String lastResult = "";
+
+	private static class SavedInput {
+		/**
+		 * The persons and any reference week of the A/B cycle as json
+		 */
+		final String json;
+		/**
+		 * Token of the session that saved the input (null if it was loaded from the input file)
+		 */
+		final String ownerToken;
+
+		SavedInput(String json, String ownerToken) {
+			this.json = json;
+			this.ownerToken = ownerToken;
+		}
+	}
+
+	private static class PrecomputedPlan {
+		int scheduleReferenceStartDate;
+		long calculatedAt;
+		MasterPlan plan;
+	}
+
+	public PlanScheduler(boolean enabled, int intervalMinutes, int weeks, Path inputFile) {
+		this.enabled = enabled;
+		this.intervalMinutes = Math.max(1, intervalMinutes);
+		this.weeks = Math.max(1, weeks);
+		this.inputFile = inputFile;
+	}
+
+	public static PlanScheduler fromSystemProperties() {
+		return new PlanScheduler(
+				Boolean.parseBoolean(System.getProperty("scheduler.enabled", "false")),
+				Util.getIntProperty("scheduler.intervalMinutes", 60),
+				Util.getIntProperty("scheduler.weeks", 2),
+				Paths.get(System.getProperty("scheduler.inputFile", "scheduler-input.json")));
+	}
+
+	/**
+	 * Loads the saved input and schedules the periodic runs (if enabled).
+	 */
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		if (Files.isRegularFile(inputFile)) {
+			try {
+				savedInput = new SavedInput(Files.readString(inputFile, StandardCharsets.UTF_8), null);
+			} catch (IOException e) {
+				System.err.println("Scheduler input " + inputFile + " could not be read: " + e.getMessage());
+			}
+		}
+		executor.scheduleWithFixedDelay(this::run, 1, intervalMinutes, TimeUnit.MINUTES);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Saves the persons list (and the reference week of the A/B cycle) for the precomputation and triggers a run.
+	 *
+	 * @param session the session of the user, used for the precomputation as long as it is logged in
+	 */
+	public void saveInput(PlanInputData inputData, WebUntisSession session) throws IOException {
+		if (inputData == null || inputData.persons == null || inputData.persons.isEmpty()) {
+			throw new IllegalArgumentException("No persons specified.");
+		}
+		inputData.preset = null;
+		String json = gson.toJson(inputData);
+		Files.writeString(inputFile, json, StandardCharsets.UTF_8);
+		savedInput = new SavedInput(json, session.getToken());
+		if (enabled) {
+			executor.execute(this::run);
+		}
+	}
+
+	/**
+	 * @return the precomputed plan for the given input fingerprint or null
+	 */
+	public MasterPlan getPrecomputedPlan(String inputFingerprint) {
+		synchronized (precomputedPlans) {
+			PrecomputedPlan precomputedPlan = precomputedPlans.get(inputFingerprint);
+			return precomputedPlan != null ? precomputedPlan.plan : null;
+		}
+	}
+
+	/**
+	 * @return the state of the scheduler and the precomputed plans
+	 */
+	public Map<String, Object> getStatus() {
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("enabled", enabled);
+		SavedInput input = savedInput;
+		status.put("inputSaved", input != null);
+		status.put("inputSessionLoggedIn", input != null && getOwnerSession(input) != null);
+		status.put("running", running);
+		status.put("lastRun", lastRun);
+		status.put("lastResult", lastResult);
+		List<Map<String, Object>> plans = new ArrayList<>();
+		synchronized (precomputedPlans) {
+			for (PrecomputedPlan precomputedPlan : precomputedPlans.values()) {
+				Map<String, Object> plan = new LinkedHashMap<>();
+				plan.put("scheduleReferenceStartDate", precomputedPlan.scheduleReferenceStartDate);
+				plan.put("calculatedAt", precomputedPlan.calculatedAt);
+				plans.add(plan);
+			}
+		}
+		status.put("precomputedPlans", plans);
+		return status;
+	}
+
+	/**
+	 * Returns the upcoming reference weeks (start dates of the A weeks) of the A/B cycle of the given reference week.
+	 */
+	List<Integer> getUpcomingReferenceWeeks(int scheduleReferenceStartDate, LocalDate today) {
+		LocalDate reference = LocalDate.parse(String.valueOf(scheduleReferenceStartDate), DATE_FORMAT);
+		LocalDate currentMonday = today.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+		long cycles = Math.floorDiv(ChronoUnit.DAYS.between(reference, currentMonday), 14);
+		LocalDate next = reference.plusDays(cycles * 14);
+		if (next.isBefore(currentMonday)) {
+			next = next.plusDays(14);
+		}
+		List<Integer> referenceWeeks = new ArrayList<>();
+		for (int i = 0; i < weeks; i++) {
+			referenceWeeks.add(Integer.parseInt(DATE_FORMAT.format(next.plusDays(i * 14L))));
+		}
+		return referenceWeeks;
+	}
+
+	/**
+	 * @return the session that saved the input if it is still registered and logged in, otherwise null
+	 */
+	private static WebUntisSession getOwnerSession(SavedInput input) {
+		WebUntisSession session = WebUntisAdapter.findSession(input.ownerToken);
+		return session != null && session.isLoggedIn() ? session : null;
+	}
+
+	private void run() {
+		SavedInput savedInput = this.savedInput;
+		if (savedInput == null) {
+			// nothing to do
+			return;
+		}
+		WebUntisSession session = getOwnerSession(savedInput);
+		if (session == null) {
+			lastResult = "paused: the session that saved the input is not logged in";
+			return;
+		}
+		String input = savedInput.json;
+		running = true;
+		lastRun = System.currentTimeMillis();
+		try {
+			int scheduleReferenceStartDate = gson.fromJson(input, PlanInputData.class).scheduleReferenceStartDate;
+			List<String> results = new ArrayList<>();
+			Map<String, PrecomputedPlan> currentPlans = new LinkedHashMap<>();
+			boolean interrupted = false;
+			for (int referenceWeek : getUpcomingReferenceWeeks(scheduleReferenceStartDate, LocalDate.now())) {
+				if (getOwnerSession(savedInput) != session) {
+					// logged out in the meantime: stop without retrying, the plans computed so far are kept
+					interrupted = true;
+					results.add(referenceWeek + ": stopped (logged out)");
+					break;
+				}
+				PrecomputedPlan precomputedPlan = precompute(session, input, referenceWeek, currentPlans);
+				interrupted |= precomputedPlan == null;
+				results.add(referenceWeek + ": " + (precomputedPlan != null ? "ok" : "interrupted"));
+			}
+			if (interrupted && getOwnerSession(savedInput) == session) {
+				// an interactive request had priority: try again soon
+				executor.schedule(this::run, RETRY_DELAY_MINUTES, TimeUnit.MINUTES);
+			}
+			synchronized (precomputedPlans) {
+				if (!interrupted) {
+					// keep the plans of the upcoming weeks only
+					precomputedPlans.keySet().retainAll(currentPlans.keySet());
+				}
+				precomputedPlans.putAll(currentPlans);
+			}
+			lastResult = String.join(", ", results);
+		} catch (Exception e) {
+			lastResult = "failed: " + e.getMessage();
+			System.err.println("Precomputing the plans failed: " + e.getMessage());
+		} finally {
+			running = false;
+		}
+	}
+
+	/**
+	 * Fetches the timetables and calculates the plan for the given reference week (if the inputs have changed).
+	 *
+	 * @return the plan or null if the calculation was interrupted by an interactive request
+	 */
+	private PrecomputedPlan precompute(WebUntisSession session, String input, int referenceWeek, Map<String, PrecomputedPlan> currentPlans) throws Exception {
+		// fresh persons for each calculation (the plan preparation removes data from the persons)
+		List<Person> persons = gson.fromJson(input, PlanInputData.class).persons;
+		PlanCalculator calculator = new PlanCalculator(session, PlanCalculator::isPlannerRequested, progress -> {});
+		DayPlanInputBuilder inputBuilder;
+		try {
+			inputBuilder = calculator.prepare(persons, referenceWeek);
+		} catch (CancellationException e) {
+			return null;
+		}
+		String fingerprint = PlanCalculator.getInputFingerprint(referenceWeek, persons);
+		synchronized (precomputedPlans) {
+			PrecomputedPlan existing = precomputedPlans.get(fingerprint);
+			if (existing != null) {
+				// unchanged inputs
+				currentPlans.put(fingerprint, existing);
+				return existing;
+			}
+		}
+		Controller controller = new Controller();
+		MasterPlan mp = calculator.findBestWeekPlan(controller, persons, inputBuilder, PlanCalculator.ITERATIONS_WITHOUT_IMPROVEMENT_LIMIT);
+		if (PlanCalculator.isPlannerRequested() || mp == null) {
+			return null;
+		}
+		// same verification and profile as an interactive calculation
+		calculator.verifyAndFinish(controller, mp);
+		PrecomputedPlan precomputedPlan = new PrecomputedPlan();
+		precomputedPlan.scheduleReferenceStartDate = referenceWeek;
+		precomputedPlan.calculatedAt = System.currentTimeMillis();
+		precomputedPlan.plan = mp;
+		currentPlans.put(fingerprint, precomputedPlan);
+		System.out.println("Precomputed the plan for the reference week " + referenceWeek);
+		return precomputedPlan;
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.thabok.main;
+
+import com.thabok.entities.ProgressObject;
+
+/**
+ * Holds the latest progress of a calculation and wakes up the threads that wait for the next update
+ * (e.g. to push it to a client as a server-sent event).
+ * @author thabok
+ */
+public class ProgressPublisher implements PlanCalculator.ProgressListener {
+
+	private ProgressObject progress = new ProgressObject();
+
+	/**
+	 * Publishes a copy of the given progress (with the next sequence number).
+	 */
+	@Override
+	public synchronized void update(ProgressObject update) {
+		long sequence = progress.sequence + 1;
+		progress = update.copy();
+		progress.sequence = sequence;
+		notifyAll();
+	}
+
+	/**
+	 * @return a copy of the latest progress
+	 */
+	public synchronized ProgressObject getProgress() {
+		return progress.copy();
+	}
+
+	/**
+	 * Waits until a newer progress than the given sequence number is published (or the timeout elapses).
+	 *
+	 * @return a copy of the latest progress (same sequence number if nothing was published)
+	 */
+	public synchronized ProgressObject awaitUpdate(long afterSequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (progress.sequence <= afterSequence && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return progress.copy();
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.thabok.untis;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests and provides percentiles (e.g. the p95 latency
+ * after which a hedged request is sent).
+ * @author thabok
+ */
+public class LatencyTracker {
+
+	private final long[] samples;
+	private int count;
+	private int next;
+
+	/**
+	 * @param capacity the number of recent samples to keep
+	 */
+	public LatencyTracker(int capacity) {
+		this.samples = new long[Math.max(1, capacity)];
+	}
+
+	public synchronized void record(long latencyMillis) {
+		samples[next] = latencyMillis;
+		next = (next + 1) % samples.length;
+		count = Math.min(count + 1, samples.length);
+	}
+
+	/**
+	 * @return the number of recorded samples (at most the capacity)
+	 */
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param percentile e.g. 0.95
+	 * @return the latency in milliseconds or -1 if nothing has been recorded yet
+	 */
+	public long getPercentile(double percentile) {
+		long[] sorted;
+		synchronized (this) {
+			if (count == 0) {
+				return -1;
+			}
+			sorted = Arrays.copyOf(samples, count);
+		}
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.thabok.untis;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates plausible getTimetable results (same structure as the WebUntis response) for any teacher.
+ * The generated timetable only depends on the seed, the initials and the date, so the same
+ * day looks the same regardless of the requested range.
+ * <br><br>
+ * Besides regular lessons the result contains the special cases the planner has to filter:
+ * cancelled lessons, substitutions (orgname), on-call substitutions, break supervisions and
+ * irregular periods (class trips).
+ * @author thabok
+ */
+public class SyntheticTimetable {
+
+	/**
+	 * Start and end times of the lessons (1st lesson, 2nd lesson, ...)
+	 */
+	public static final int[][] LESSON_TIMES = {
+			{ 755, 840 }, { 845, 930 }, { 945, 1030 }, { 1035, 1120 }, { 1135, 1220 },
+			{ 1225, 1310 }, { 1330, 1415 }, { 1415, 1500 }, { 1505, 1550 } };
+
+	/**
+	 * Number of possible first lessons (the day starts with one of the first n lessons)
+	 */
+	public static final int DEFAULT_FIRST_LESSON_SPREAD = 4;
+	/**
+	 * Max. number of lessons of a day (the length of a day is 2..n lessons)
+	 */
+	public static final int DEFAULT_MAX_LESSONS_PER_DAY = 7;
+
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * Generates the periods of the given teacher between start date and end date (both inclusive).
+	 *
+	 * @param initials the initials of the teacher
+	 * @param startDate first date (e.g. 20210830)
+	 * @param endDate last date (e.g. 20210910)
+	 * @param seed varies the generated timetables
+	 * @return the periods (serializable with Gson)
+	 */
+	public static List<Map<String, Object>> generate(String initials, int startDate, int endDate, long seed) {
+		return generate(initials, startDate, endDate, seed, DEFAULT_FIRST_LESSON_SPREAD, DEFAULT_MAX_LESSONS_PER_DAY);
+	}
+
+	/**
+	 * Generates the periods of the given teacher with a custom density and spread of the lessons.
+	 *
+	 * @param firstLessonSpread number of possible first lessons (1 = everyone starts with the 1st lesson)
+	 * @param maxLessonsPerDay max. number of lessons of a day (the timetable density)
+	 * @see #generate(String, int, int, long)
+	 */
+	public static List<Map<String, Object>> generate(String initials, int startDate, int endDate, long seed, int firstLessonSpread, int maxLessonsPerDay) {
+		int spread = Math.max(1, Math.min(LESSON_TIMES.length, firstLessonSpread));
+		int maxLessons = Math.max(2, Math.min(LESSON_TIMES.length, maxLessonsPerDay));
+		List<Map<String, Object>> periods = new ArrayList<>();
+		LocalDate end = LocalDate.parse(String.valueOf(endDate), DATE_FORMAT);
+		for (LocalDate day = LocalDate.parse(String.valueOf(startDate), DATE_FORMAT); !day.isAfter(end); day = day.plusDays(1)) {
+			if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				continue;
+			}
+			int date = Integer.parseInt(DATE_FORMAT.format(day));
+			generateDay(periods, initials, date, new Random(Arrays.hashCode(new long[] { seed, initials.hashCode(), date })), spread, maxLessons);
+		}
+		return periods;
+	}
+
+	private static void generateDay(List<Map<String, Object>> periods, String initials, int date, Random random, int firstLessonSpread, int maxLessonsPerDay) {
+		if (random.nextInt(20) == 0) {
+			// gap day
+			return;
+		}
+		if (random.nextInt(50) == 0) {
+			// class trip: the whole day is irregular
+			Map<String, Object> trip = createPeriod(date, LESSON_TIMES[0][0], LESSON_TIMES[LESSON_TIMES.length - 1][1], initials, null, 1);
+			trip.put("code", "irregular");
+			periods.add(trip);
+			return;
+		}
+		int firstLesson = random.nextInt(firstLessonSpread);
+		int lastLesson = Math.min(LESSON_TIMES.length - 1, firstLesson + 1 + random.nextInt(maxLessonsPerDay - 1));
+		for (int lesson = firstLesson; lesson <= lastLesson; lesson++) {
+			Map<String, Object> period = createPeriod(date, LESSON_TIMES[lesson][0], LESSON_TIMES[lesson][1], initials, null, 1 + random.nextInt(30));
+			if (random.nextInt(10) == 0) {
+				period.put("code", "cancelled");
+			}
+			periods.add(period);
+		}
+		if (random.nextInt(8) == 0) {
+			// break supervision before the first lesson
+			Map<String, Object> supervision = createPeriod(date, LESSON_TIMES[firstLesson][0] - 15, LESSON_TIMES[firstLesson][0], initials, null, 1);
+			supervision.remove("activityType");
+			supervision.put("lstype", "bs");
+			periods.add(supervision);
+		}
+		if (random.nextInt(6) == 0) {
+			// on-call substitution after the last lesson (not relevant for the planning)
+			int lesson = Math.min(LESSON_TIMES.length - 1, lastLesson + 1);
+			periods.add(createPeriod(date, LESSON_TIMES[lesson][0], LESSON_TIMES[lesson][1], initials, null, Subject.ON_CALL_SUBSTITUTION_ID));
+		}
+		if (random.nextInt(10) == 0) {
+			// lesson of this teacher taken over by someone else (not relevant for the planning)
+			int lesson = random.nextInt(LESSON_TIMES.length);
+			periods.add(createPeriod(date, LESSON_TIMES[lesson][0], LESSON_TIMES[lesson][1], "XX" + random.nextInt(100), initials, 1));
+		}
+	}
+
+	private static Map<String, Object> createPeriod(int date, int startTime, int endTime, String name, String orgname, int subjectId) {
+		Map<String, Object> period = new LinkedHashMap<>();
+		period.put("id", (date % 10000) * 10000 + startTime);
+		period.put("date", date);
+		period.put("startTime", startTime);
+		period.put("endTime", endTime);
+		period.put("activityType", "Unterricht");
+		period.put("su", Arrays.asList(Map.of("id", subjectId)));
+		Map<String, Object> teacher = new LinkedHashMap<>();
+		teacher.put("id", Math.abs(name.hashCode() % 1000));
+		teacher.put("name", name);
+		if (orgname != null) {
+			teacher.put("orgname", orgname);
+		}
+		period.put("te", Arrays.asList(teacher));
+		return period;
+	}
+
+}
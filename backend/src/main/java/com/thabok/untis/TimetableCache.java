@@ -0,0 +1,327 @@
+package com.thabok.untis;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.thabok.util.Util;
+
+/**
+ * Cache for the per-week timetables. Only the first start time and the last end time per day are stored
+ * (compact int array: date, startTime, endTime, date, startTime, ...). The entries are kept in memory and
+ * persisted in a gzip-compressed JSON file, so a restart of the backend doesn't require to fetch everything again.
+ * <br><br>
+ * Entries are keyed by school, teacher and week start date. The number of entries is bounded, the least recently
+ * used entries are evicted first. Entries older than the TTL are considered stale: they can still be served,
+ * but should be refreshed.
+ * <br><br>
+ * Configuration (system properties):
+ * <ul>
+ * <li>webuntis.cache.file: path of the cache file (default: webuntis-cache.json.gz, empty value: in-memory only)</li>
+ * <li>webuntis.cache.ttlMinutes: time after which an entry is stale (default: 360)</li>
+ * <li>webuntis.cache.maxEntries: max. number of cached weeks (default: 5000)</li>
+ * </ul>
+ * @author thabok
+ */
+public class TimetableCache {
+
+	private static final int FILE_FORMAT_VERSION = 2;
+	private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(30);
+	private static final long SAVE_DELAY_MS = 5000;
+
+	private final Path file;
+	private final long ttlMillis;
+	private final int maxEntries;
+	private final LinkedHashMap<String, CachedWeek> entries;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final AtomicBoolean saveScheduled = new AtomicBoolean();
+	private final Object saveLock = new Object();
+	private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "timetable-cache-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The cached first and last times per day of one week with the time it was retrieved from WebUntis.
+	 */
+	public static class CachedWeek {
+		/**
+		 * Triples of date, startTime and endTime (e.g. 20210830, 755, 1305)
+		 */
+		public final int[] days;
+		public final long fetchedAt;
+
+		public CachedWeek(int[] days, long fetchedAt) {
+			this.days = days;
+			this.fetchedAt = fetchedAt;
+		}
+	}
+
+	public TimetableCache(Path file, long ttlMillis, int maxEntries) {
+		this.file = file;
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = Math.max(1, maxEntries);
+		// access order: the least recently used entry comes first
+		this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedWeek> eldest) {
+				boolean evict = size() > TimetableCache.this.maxEntries;
+				if (evict) {
+					evictions.increment();
+				}
+				return evict;
+			}
+		};
+	}
+
+	/**
+	 * Creates the cache based on the system properties and loads the persisted entries.
+	 */
+	public static TimetableCache fromSystemProperties() {
+		String path = System.getProperty("webuntis.cache.file", "webuntis-cache.json.gz");
+		long ttlMillis = TimeUnit.MINUTES.toMillis(Util.getIntProperty("webuntis.cache.ttlMinutes", 360));
+		int maxEntries = Util.getIntProperty("webuntis.cache.maxEntries", 5000);
+		TimetableCache cache = new TimetableCache(path.isBlank() ? null : Paths.get(path), ttlMillis, maxEntries);
+		cache.load();
+		Runtime.getRuntime().addShutdownHook(new Thread(cache::save));
+		return cache;
+	}
+
+	/**
+	 * Returns the key for the given school, teacher and week start date.
+	 */
+	public static String getKey(String school, String teacherInitials, int weekStartDate) {
+		return school + "|" + teacherInitials + "|" + weekStartDate;
+	}
+
+	/**
+	 * @return the cached entry (may be stale) or null
+	 */
+	public synchronized CachedWeek get(String key) {
+		CachedWeek entry = entries.get(key);
+		if (entry == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return entry;
+	}
+
+	public boolean isStale(CachedWeek entry) {
+		return System.currentTimeMillis() - entry.fetchedAt > ttlMillis;
+	}
+
+	/**
+	 * Adds (or replaces) an entry. Only successfully retrieved timetables must be added.
+	 * The cache file is updated shortly after.
+	 *
+	 * @param key see {@link #getKey(String, String, int)}
+	 * @param days triples of date, startTime and endTime
+	 */
+	public void put(String key, int[] days) {
+		synchronized (this) {
+			entries.put(key, new CachedWeek(days, System.currentTimeMillis()));
+		}
+		scheduleSave();
+	}
+
+	/**
+	 * Removes all entries.
+	 * @return the number of removed entries
+	 */
+	public int clear() {
+		int removed;
+		synchronized (this) {
+			removed = entries.size();
+			entries.clear();
+		}
+		scheduleSave();
+		return removed;
+	}
+
+	/**
+	 * Removes all entries of the given teacher.
+	 * @return the number of removed entries
+	 */
+	public int clear(String teacherInitials) {
+		int removed = 0;
+		synchronized (this) {
+			String infix = "|" + teacherInitials + "|";
+			for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+				if (it.next().contains(infix)) {
+					it.remove();
+					removed++;
+				}
+			}
+		}
+		scheduleSave();
+		return removed;
+	}
+
+	/**
+	 * @return the number of entries, hits, misses and evictions (since the start of the backend)
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		synchronized (this) {
+			stats.put("entries", entries.size());
+		}
+		long hitCount = hits.sum();
+		long missCount = misses.sum();
+		stats.put("maxEntries", maxEntries);
+		stats.put("hits", hitCount);
+		stats.put("misses", missCount);
+		stats.put("evictions", evictions.sum());
+		stats.put("hitRatio", (hitCount + missCount) == 0 ? 0.0 : ((double) hitCount) / (hitCount + missCount));
+		return stats;
+	}
+
+	/**
+	 * Cancels the delayed save and stops the writer thread (e.g. in tests before the file is deleted).
+	 * Changes after this are not written anymore unless {@link #save()} is called.
+	 */
+	void close() throws InterruptedException {
+		saveExecutor.shutdownNow();
+		saveExecutor.awaitTermination(SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	private void scheduleSave() {
+		if (file != null && !saveExecutor.isShutdown() && saveScheduled.compareAndSet(false, true)) {
+			// collect the changes of a few seconds in one write
+			saveExecutor.schedule(() -> {
+				saveScheduled.set(false);
+				save();
+			}, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Loads the entries from the cache file (entries older than 30 days are dropped).
+	 */
+	public void load() {
+		if (file == null || !Files.isRegularFile(file)) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int version = 0;
+		int loaded = 0;
+		try (JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if ("version".equals(name)) {
+					version = reader.nextInt();
+				} else if ("entries".equals(name) && version == FILE_FORMAT_VERSION) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						String key = reader.nextName();
+						// compact entry format: [fetchedAt, [date, startTime, endTime, ...]]
+						reader.beginArray();
+						long fetchedAt = reader.nextLong();
+						List<Integer> values = new ArrayList<>();
+						reader.beginArray();
+						while (reader.hasNext()) {
+							values.add(reader.nextInt());
+						}
+						reader.endArray();
+						reader.endArray();
+						if (now - fetchedAt <= MAX_AGE_MS) {
+							int[] days = values.stream().mapToInt(Integer::intValue).toArray();
+							synchronized (this) {
+								entries.putIfAbsent(key, new CachedWeek(days, fetchedAt));
+							}
+							loaded++;
+						}
+					}
+					reader.endObject();
+				} else {
+					// unknown attribute or outdated file format
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			System.out.println("Loaded " + loaded + " cached timetable entries from " + file);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Timetable cache file " + file + " could not be loaded: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes all entries to the cache file. The file is written to a temporary file first
+	 * and then moved into place, so readers never see a partially written cache.
+	 */
+	public void save() {
+		if (file == null) {
+			return;
+		}
+		synchronized (saveLock) {
+			writeFile();
+		}
+	}
+
+	private void writeFile() {
+		Map<String, CachedWeek> snapshot;
+		synchronized (this) {
+			snapshot = new LinkedHashMap<>(entries);
+		}
+		Path tmpFile = null;
+		try {
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			tmpFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tmpFile)), StandardCharsets.UTF_8))) {
+				writer.beginObject();
+				writer.name("version").value(FILE_FORMAT_VERSION);
+				writer.name("entries").beginObject();
+				for (Map.Entry<String, CachedWeek> entry : snapshot.entrySet()) {
+					writer.name(entry.getKey()).beginArray().value(entry.getValue().fetchedAt).beginArray();
+					for (int value : entry.getValue().days) {
+						writer.value(value);
+					}
+					writer.endArray().endArray();
+				}
+				writer.endObject();
+				writer.endObject();
+			}
+			try {
+				Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			System.err.println("Timetable cache file " + file + " could not be written: " + e.getMessage());
+			try {
+				if (tmpFile != null) {
+					Files.deleteIfExists(tmpFile);
+				}
+			} catch (IOException e1) {
+			}
+		}
+	}
+
+}
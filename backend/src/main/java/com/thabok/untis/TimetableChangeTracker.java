@@ -0,0 +1,140 @@
+package com.thabok.untis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps a content hash of the reduced timetable (first start time and last end time per day) of each teacher
+ * and reference week. Every fetched timetable is recorded, so it is known which teachers actually changed
+ * since a given point in time (e.g. after a few substitutions) and which ones can be reused as they are.
+ * <br><br>
+ * The number of tracked timetables is bounded, the least recently recorded ones are dropped first.
+ * @author thabok
+ */
+public class TimetableChangeTracker {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final LinkedHashMap<String, State> states;
+
+	/**
+	 * The last known hash of a timetable and when it was seen / changed.
+	 */
+	private static class State {
+		String initials;
+		int scheduleReferenceStartDate;
+		long hash;
+		long firstSeenAt;
+		long changedAt;
+		long checkedAt;
+		int changes;
+	}
+
+	/**
+	 * @param maxEntries the max. number of tracked timetables
+	 */
+	public TimetableChangeTracker(int maxEntries) {
+		int limit = Math.max(1, maxEntries);
+		this.states = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, State> eldest) {
+				return size() > limit;
+			}
+		};
+	}
+
+	/**
+	 * Returns a 64 bit hash (FNV-1a) of the date, start time and end time of all days of the timetable.
+	 * The order of the map doesn't matter.
+	 */
+	public static long hash(Map<Integer, Period> timetable) {
+		long hash = FNV_OFFSET_BASIS;
+		for (Period period : new TreeMap<>(timetable).values()) {
+			hash = update(hash, period.date);
+			hash = update(hash, period.startTime);
+			hash = update(hash, period.endTime);
+		}
+		return hash;
+	}
+
+	private static long update(long hash, int value) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			hash ^= (value >>> shift) & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Records the hash of a freshly retrieved timetable.
+	 *
+	 * @return true if the timetable differs from the previously recorded one (false if unchanged or seen for the first time)
+	 */
+	public synchronized boolean record(String initials, int scheduleReferenceStartDate, long hash) {
+		long now = System.currentTimeMillis();
+		String key = initials + "|" + scheduleReferenceStartDate;
+		State state = states.get(key);
+		if (state == null) {
+			state = new State();
+			state.initials = initials;
+			state.scheduleReferenceStartDate = scheduleReferenceStartDate;
+			state.hash = hash;
+			state.firstSeenAt = now;
+			state.checkedAt = now;
+			states.put(key, state);
+			return false;
+		}
+		state.checkedAt = now;
+		if (state.hash == hash) {
+			return false;
+		}
+		state.hash = hash;
+		state.changedAt = now;
+		state.changes++;
+		return true;
+	}
+
+	/**
+	 * Returns the teachers whose timetable changed at or after the given time.
+	 *
+	 * @param scheduleReferenceStartDate the reference week or 0 for all weeks
+	 * @param since time in milliseconds (epoch)
+	 * @return initials, reference week, time of the change and number of changes per timetable (most recent first)
+	 */
+	public synchronized List<Map<String, Object>> getChanges(int scheduleReferenceStartDate, long since) {
+		List<State> changed = new ArrayList<>();
+		for (State state : states.values()) {
+			if (state.changes > 0 && state.changedAt >= since
+					&& (scheduleReferenceStartDate == 0 || state.scheduleReferenceStartDate == scheduleReferenceStartDate)) {
+				changed.add(state);
+			}
+		}
+		changed.sort((s1, s2) -> Long.compare(s2.changedAt, s1.changedAt));
+		List<Map<String, Object>> changes = new ArrayList<>();
+		for (State state : changed) {
+			Map<String, Object> change = new LinkedHashMap<>();
+			change.put("initials", state.initials);
+			change.put("scheduleReferenceStartDate", state.scheduleReferenceStartDate);
+			change.put("changedAt", state.changedAt);
+			change.put("checkedAt", state.checkedAt);
+			change.put("firstSeenAt", state.firstSeenAt);
+			change.put("changes", state.changes);
+			changes.add(change);
+		}
+		return changes;
+	}
+
+	/**
+	 * @return the number of tracked timetables
+	 */
+	public synchronized int size() {
+		return states.size();
+	}
+
+}
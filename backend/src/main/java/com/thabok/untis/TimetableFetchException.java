@@ -0,0 +1,29 @@
+package com.thabok.untis;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Thrown if the timetables of one or more persons could not be retrieved from WebUntis.
+ * The failures are collected per person (initials -> error message).
+ * @author thabok
+ */
+public class TimetableFetchException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, String> failures;
+
+	public TimetableFetchException(Map<String, String> failures) {
+		super("Failed to fetch the timetables for " + failures.size() + " person(s): " + new TreeMap<>(failures));
+		this.failures = new TreeMap<>(failures);
+	}
+
+	/**
+	 * @return the error messages by initials of the persons whose timetables could not be retrieved
+	 */
+	public Map<String, String> getFailures() {
+		return failures;
+	}
+
+}
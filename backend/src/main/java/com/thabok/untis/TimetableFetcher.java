@@ -0,0 +1,178 @@
+package com.thabok.untis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import com.thabok.entities.Person;
+import com.thabok.util.JfrEvents;
+import com.thabok.util.Util;
+
+/**
+ * Fetches the timetables of many persons concurrently. The number of requests that
+ * are sent to WebUntis at the same time is limited by the configured concurrency
+ * (system property <code>webuntis.concurrency</code>, default: 8). Each request is a
+ * JSON-RPC batch with the calls for up to <code>webuntis.batchSize</code> persons (default: 10).
+ * @author thabok
+ */
+public class TimetableFetcher {
+
+	private static final int DEFAULT_CONCURRENCY = 8;
+	private static final int DEFAULT_BATCH_SIZE = 10;
+	private static final long POLL_INTERVAL_MS = 100;
+	private static final AtomicInteger threadCounter = new AtomicInteger();
+
+	private final int concurrency;
+	private final int batchSize;
+
+	/**
+	 * Receives the timetables as soon as they arrive (e.g. to convert them while the other timetables are still being fetched).
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		/**
+		 * @param person the person
+		 * @param timetable the timetable or null if it couldn't be retrieved
+		 * @param fetchedCount the number of completed persons so far
+		 */
+		void onFetched(Person person, Map<Integer, Period> timetable, int fetchedCount) throws Exception;
+	}
+
+	public TimetableFetcher() {
+		this(Util.getIntProperty("webuntis.concurrency", DEFAULT_CONCURRENCY), Util.getIntProperty("webuntis.batchSize", DEFAULT_BATCH_SIZE));
+	}
+
+	public TimetableFetcher(int concurrency, int batchSize) {
+		this.concurrency = Math.max(1, concurrency);
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Fetches the timetables for the given persons (A and B week, starting with the reference start date).
+	 * <br><br>
+	 * The listener is invoked from the calling thread for each person whose timetable has been retrieved (or failed),
+	 * so it is safe to report progress or to process the timetable from there while the remaining requests are in flight.
+	 * If the operation is cancelled, all pending and in-flight requests of the session are aborted.
+	 *
+	 * @param session the WebUntis session of the user
+	 * @param persons the persons whose timetables shall be fetched
+	 * @param scheduleReferenceStartDate the start date of the A week (e.g. 20210830)
+	 * @param isCancelled polled while waiting for responses, aborts the fetch phase if true
+	 * @param listener called with the person, the timetable and the number of completed persons
+	 * @return the timetables by person
+	 * @throws TimetableFetchException if the timetables of one or more persons could not be retrieved
+	 * @throws CancellationException if the operation was cancelled
+	 */
+	public Map<Person, Map<Integer, Period>> fetchTimetables(WebUntisSession session, List<Person> persons, int scheduleReferenceStartDate,
+			BooleanSupplier isCancelled, Listener listener) throws Exception {
+		Map<Person, Map<Integer, Period>> timetables = new HashMap<>();
+		if (persons.isEmpty()) {
+			return timetables;
+		}
+		Map<String, String> failures = new ConcurrentHashMap<>();
+		// group the persons into batches (one JSON-RPC batch request each)
+		List<List<Person>> batches = new ArrayList<>();
+		for (int i = 0; i < persons.size(); i += batchSize) {
+			batches.add(persons.subList(i, Math.min(i + batchSize, persons.size())));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, batches.size()), r -> {
+			Thread thread = new Thread(r, "timetable-fetcher-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Map<String, Map<Integer, Period>>> completionService = new ExecutorCompletionService<>(executor);
+		Map<Future<Map<String, Map<Integer, Period>>>, List<Person>> batchesByFuture = new HashMap<>();
+		try {
+			for (List<Person> batch : batches) {
+				List<String> initials = batch.stream().map(p -> p.initials).collect(Collectors.toList());
+				Future<Map<String, Map<Integer, Period>>> future = completionService.submit(
+						() -> fetchBatch(session, initials, scheduleReferenceStartDate, failures));
+				batchesByFuture.put(future, batch);
+			}
+			int completed = 0;
+			for (int completedBatches = 0; completedBatches < batches.size();) {
+				if (isCancelled.getAsBoolean()) {
+					batchesByFuture.keySet().forEach(future -> future.cancel(true));
+					WebUntisAdapter.abortPendingRequests(session);
+					throw new CancellationException("The operation was cancelled by the user.");
+				}
+				Future<Map<String, Map<Integer, Period>>> future = completionService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				completedBatches++;
+				List<Person> batch = batchesByFuture.get(future);
+				Map<String, Map<Integer, Period>> timetablesByInitials;
+				try {
+					timetablesByInitials = future.get();
+				} catch (ExecutionException e) {
+					timetablesByInitials = Collections.emptyMap();
+					for (Person person : batch) {
+						failures.put(getKey(person), String.valueOf(e.getCause().getMessage()));
+					}
+				}
+				for (Person person : batch) {
+					Map<Integer, Period> timetable = timetablesByInitials.get(person.initials);
+					if (timetable != null) {
+						timetables.put(person, timetable);
+					}
+					listener.onFetched(person, timetable, ++completed);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (!failures.isEmpty()) {
+			throw new TimetableFetchException(failures);
+		}
+		return timetables;
+	}
+
+	/**
+	 * Fetches the timetables of one batch, records a flight recorder event per person (see {@link JfrEvents})
+	 */
+	private Map<String, Map<Integer, Period>> fetchBatch(WebUntisSession session, List<String> initials, int scheduleReferenceStartDate,
+			Map<String, String> failures) throws Exception {
+		List<JfrEvents.TimetableFetchEvent> events = new ArrayList<>();
+		for (int i = 0; i < initials.size(); i++) {
+			JfrEvents.TimetableFetchEvent event = new JfrEvents.TimetableFetchEvent();
+			event.begin();
+			events.add(event);
+		}
+		Map<String, Map<Integer, Period>> timetables = Collections.emptyMap();
+		try {
+			timetables = WebUntisAdapter.getTimetables(session, initials, scheduleReferenceStartDate, batchSize, failures);
+			return timetables;
+		} finally {
+			for (int i = 0; i < initials.size(); i++) {
+				JfrEvents.TimetableFetchEvent event = events.get(i);
+				event.end();
+				if (event.shouldCommit()) {
+					event.initials = initials.get(i);
+					event.batchSize = initials.size();
+					event.success = timetables.containsKey(initials.get(i));
+					event.commit();
+				}
+			}
+		}
+	}
+
+	private static String getKey(Person person) {
+		return person.initials != null ? person.initials : person.toString();
+	}
+
+}
@@ -0,0 +1,298 @@
+package com.thabok.untis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.thabok.helper.TimetableHelper;
+
+/**
+ * Streaming parser for getTimetable responses. The periods are read one at a time, filtered with
+ * {@link TimetableHelper#isPeriodRelevant(String, boolean, int)} and reduced to the first start time
+ * and the last end time per date right away, so the complete response (periods with their subjects
+ * and teachers) is never held in memory.
+ * @author thabok
+ */
+public class TimetableResponseReader {
+
+	private static final String NO_TIMETABLE_RECEIVED = "No timetable received from WebUntis.";
+
+	/**
+	 * The parsed response of one getTimetable call: either the timetable or the error message.
+	 */
+	public static class Result {
+		public final Map<Integer, Period> timetable;
+		public final String error;
+
+		private Result(Map<Integer, Period> timetable, String error) {
+			this.timetable = timetable;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Reads the response of a single getTimetable call.
+	 *
+	 * @param in the response body
+	 * @param initials the initials of the teacher whose timetable was requested
+	 * @return the first and last period per day (key: date, e.g. 20210831)
+	 * @throws Exception with the error message from WebUntis if the response doesn't contain a result
+	 */
+	public static Map<Integer, Period> readTimetable(Reader in, String initials) throws Exception {
+		JsonReader reader = new JsonReader(in);
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			throw new Exception(NO_TIMETABLE_RECEIVED);
+		}
+		Result result = readResponse(reader, initials).result;
+		if (result.timetable == null) {
+			throw new Exception(result.error);
+		}
+		return result.timetable;
+	}
+
+	/**
+	 * Reads the response of a JSON-RPC batch with getTimetable calls whose ids are the initials of the teachers.
+	 *
+	 * @param in the response body
+	 * @return the results by id or null if the response is not an array (i.e. the server doesn't handle batches)
+	 * @throws IOException if the response is not valid JSON
+	 */
+	public static Map<String, Result> readTimetableBatch(Reader in) throws IOException {
+		JsonReader reader = new JsonReader(in);
+		if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+			Response response = readResponse(reader, null);
+			System.err.println("WebUntis rejected the batch request: " + response.result.error);
+			return null;
+		}
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			return null;
+		}
+		Map<String, Result> resultsById = new HashMap<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				continue;
+			}
+			Response response = readResponse(reader, null);
+			if (response.id != null) {
+				resultsById.put(response.id, response.result);
+			}
+		}
+		reader.endArray();
+		return resultsById;
+	}
+
+	private static class Response {
+		String id;
+		Result result;
+	}
+
+	/**
+	 * Reads one JSON-RPC response object.
+	 *
+	 * @param initials the teacher initials to filter the periods with, or null to use the id of the response
+	 */
+	private static Response readResponse(JsonReader reader, String initials) throws IOException {
+		Response response = new Response();
+		Map<Integer, Period> timetable = null;
+		JsonElement bufferedResult = null;
+		String error = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if ("id".equals(name) && reader.peek() != JsonToken.NULL) {
+				response.id = reader.nextString();
+			} else if ("result".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				String filterInitials = initials != null ? initials : response.id;
+				if (filterInitials != null) {
+					timetable = readPeriods(reader, filterInitials);
+				} else {
+					// the id comes after the result (unusual): keep the result until the initials are known
+					bufferedResult = JsonParser.parseReader(reader);
+				}
+			} else if ("error".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				error = readErrorMessage(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (bufferedResult != null && response.id != null) {
+			JsonReader bufferedReader = new JsonReader(new StringReader(bufferedResult.toString()));
+			timetable = readPeriods(bufferedReader, response.id);
+		}
+		response.result = new Result(timetable, timetable == null ? (error != null ? error : NO_TIMETABLE_RECEIVED) : null);
+		return response;
+	}
+
+	private static String readErrorMessage(JsonReader reader) throws IOException {
+		String message = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("message".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+				message = reader.nextString();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return message;
+	}
+
+	/**
+	 * Reads the array of periods and keeps the earliest start time and the latest end time of the relevant periods per date.
+	 */
+	private static Map<Integer, Period> readPeriods(JsonReader reader, String initials) throws IOException {
+		Map<Integer, Period> comingAndGoing = new TreeMap<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			int date = 0;
+			int startTime = 0;
+			int endTime = 0;
+			String code = null;
+			boolean isOnCallSubstitution = false;
+			int teacherMatch = 0;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "date":
+					date = reader.nextInt();
+					break;
+				case "startTime":
+					startTime = reader.nextInt();
+					break;
+				case "endTime":
+					endTime = reader.nextInt();
+					break;
+				case "code":
+					code = readOptionalString(reader);
+					break;
+				case "su":
+					isOnCallSubstitution = readSubjects(reader);
+					break;
+				case "te":
+					teacherMatch = readTeachers(reader, initials);
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			if (!TimetableHelper.isPeriodRelevant(code, isOnCallSubstitution, teacherMatch)) {
+				continue;
+			}
+			Period timetableItem = comingAndGoing.get(date);
+			if (timetableItem == null) {
+				if (!isWeekday(date)) {
+					// the request covers the weekend between the A and B week (e.g. a Saturday event), not relevant for the planning
+					continue;
+				}
+				timetableItem = new Period();
+				timetableItem.date = date;
+				timetableItem.startTime = startTime;
+				timetableItem.endTime = endTime;
+				comingAndGoing.put(date, timetableItem);
+			} else {
+				if (startTime < timetableItem.startTime) {
+					timetableItem.startTime = startTime;
+				}
+				if (endTime > timetableItem.endTime) {
+					timetableItem.endTime = endTime;
+				}
+			}
+		}
+		reader.endArray();
+		return comingAndGoing;
+	}
+
+	/**
+	 * @param date the date (e.g. 20210904)
+	 * @return true if the date is a monday to friday
+	 */
+	static boolean isWeekday(int date) {
+		try {
+			DayOfWeek dayOfWeek = LocalDate.of(date / 10000, date / 100 % 100, date % 100).getDayOfWeek();
+			return dayOfWeek != DayOfWeek.SATURDAY && dayOfWeek != DayOfWeek.SUNDAY;
+		} catch (DateTimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if one of the subjects is the on-call-substitution
+	 */
+	private static boolean readSubjects(JsonReader reader) throws IOException {
+		boolean isOnCallSubstitution = false;
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			reader.skipValue();
+			return false;
+		}
+		reader.beginArray();
+		while (reader.hasNext()) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if ("id".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+					isOnCallSubstitution |= reader.nextInt() == Subject.ON_CALL_SUBSTITUTION_ID;
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		}
+		reader.endArray();
+		return isOnCallSubstitution;
+	}
+
+	/**
+	 * @return the combined flags of {@link TimetableHelper#getTeacherMatch(String, String, String)}
+	 */
+	private static int readTeachers(JsonReader reader, String initials) throws IOException {
+		int teacherMatch = 0;
+		if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+			reader.skipValue();
+			return 0;
+		}
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String name = null;
+			String orgname = null;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+				case "name":
+					name = readOptionalString(reader);
+					break;
+				case "orgname":
+					orgname = readOptionalString(reader);
+					break;
+				default:
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			teacherMatch |= TimetableHelper.getTeacherMatch(name, orgname, initials);
+		}
+		reader.endArray();
+		return teacherMatch;
+	}
+
+	private static String readOptionalString(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+}
@@ -1,25 +1,45 @@
 package com.thabok.untis;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.ParseException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
 import com.google.gson.Gson;
-import com.thabok.helper.TimetableHelper;
+import com.thabok.util.Metrics;
 import com.thabok.util.Util;
 
 public class WebUntisAdapter {
@@ -28,20 +48,417 @@ public class WebUntisAdapter {
     private static final String JSON_RPC_VERSION = "2.0";
     private static final String APP_ACCESS_ID = "id1234";
     private static final String SCHOOL_NAME = "";
-    private static final String URL_SCHOOL_NGW = "https://ngw-wilhelmshaven.webuntis.com/WebUntis/jsonrpc.do?school=" + SCHOOL_NAME;
-//	private static final String CACHE_FILE = "/Users/thabok/Git/mycartime/webuntis-cache.json";
+    private static final String DEFAULT_URL = "https://ngw-wilhelmshaven.webuntis.com/WebUntis/jsonrpc.do?school=" + SCHOOL_NAME;
+    /**
+     * JSON-RPC endpoint, can be changed with the system property webuntis.url (e.g. to use the {@link WebUntisStandIn})
+     */
+    private static volatile String URL_SCHOOL_NGW = System.getProperty("webuntis.url", DEFAULT_URL);
+    private static final long DEFAULT_KEEP_ALIVE_MS = 30000;
     
-    public static String sessionId = null;
+    /**
+     * Token of the placeholder session that is used for calculations without a user session (e.g. offline with a
+     * timetable replay) if nobody is logged in. It is not available to the requests of the web service.
+     */
+    public static final String DEFAULT_SESSION_TOKEN = "default";
+    private static final int MAX_CONNECTIONS_PER_SESSION = Util.getIntProperty("webuntis.maxConnectionsPerSession", 8);
+    private static final long SESSION_IDLE_MS = TimeUnit.MINUTES.toMillis(Util.getIntProperty("webuntis.sessionIdleMinutes", 120));
     
-    private static Map<String, String> requestResultCache = new HashMap<>();
+    /**
+     * The sessions of the users by token (see {@link WebUntisSession})
+     */
+    private static final Map<String, WebUntisSession> sessions = new ConcurrentHashMap<>();
+    private static final WebUntisSession defaultSession = new WebUntisSession(DEFAULT_SESSION_TOKEN, MAX_CONNECTIONS_PER_SESSION);
+    private static volatile WebUntisSession lastLoggedInSession;
     
-    private static Map<Integer, Period>  getTimetableBasedOnStartDate(String teacherInitials, int startDate) throws Exception {
+    /**
+     * Shared, thread-safe client with a pool of keep-alive connections (avoids a new TCP/TLS handshake per request)
+     */
+    private static final CloseableHttpClient httpClient = createHttpClient();
+    
+    /**
+     * Set to false once WebUntis rejects a JSON-RPC batch request (single requests are used from then on)
+     */
+    private static volatile boolean batchRequestsSupported = true;
+    
+    /**
+     * Per-week getTimetable results, persisted on disk (see {@link TimetableCache})
+     */
+    private static final TimetableCache timetableCache = TimetableCache.fromSystemProperties();
+    
+    /**
+     * Content hashes of the fetched timetables (which teachers changed, see {@link TimetableChangeTracker})
+     */
+    private static final TimetableChangeTracker changeTracker = new TimetableChangeTracker(
+            Util.getIntProperty("webuntis.changes.maxEntries", 5000));
+    
+    private static final long STALE_GRACE_MS = Util.getIntProperty("webuntis.cache.staleGraceMs", 2000);
+    
+    /**
+     * Background refreshes of stale cache entries (by cache key of the A week)
+     */
+    private static final Map<String, CompletableFuture<Map<Integer, Period>>> refreshesInFlight = new ConcurrentHashMap<>();
+    
+    private static final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "timetable-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * Max. time for a call including retries and hedged requests (system property webuntis.deadlineMs, default: 20000)
+     */
+    private static final int DEADLINE_MS = Util.getIntProperty("webuntis.deadlineMs", 20000);
+    private static final int MAX_RETRIES = Util.getIntProperty("webuntis.retries", 2);
+    private static final int RETRY_BACKOFF_MS = Util.getIntProperty("webuntis.retryBackoffMs", 200);
+    private static final int MAX_RETRY_BACKOFF_MS = Util.getIntProperty("webuntis.maxRetryBackoffMs", 2000);
+    
+    /**
+     * Hedging: if a single timetable request takes longer than the p95 latency of the recent single timetable
+     * requests, a duplicate request is sent and the first answer wins (system property webuntis.hedging, default: true)
+     */
+    private static final boolean HEDGING_ENABLED = Boolean.parseBoolean(System.getProperty("webuntis.hedging", "true"));
+    private static final int MIN_HEDGE_DELAY_MS = Util.getIntProperty("webuntis.minHedgeDelayMs", 50);
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /**
+     * The shape of a call. Only the getTimetable calls are idempotent and retried, only single getTimetable
+     * calls are hedged (a duplicate batch would double the load). Each shape has its own latency statistics,
+     * a batch takes longer than a single call.
+     */
+    private enum RequestType {
+        TIMETABLE(true, true),
+        TIMETABLE_BATCH(true, false),
+        OTHER(false, false);
+
+        final boolean retried;
+        final boolean hedged;
+        final LatencyTracker latencyTracker = new LatencyTracker(200);
+
+        RequestType(boolean retried, boolean hedged) {
+            this.retried = retried;
+            this.hedged = hedged;
+        }
+    }
+    
+    private static final Metrics.Histogram requestDuration = Metrics.histogram("webuntis_request_duration_seconds",
+            "Duration of the HTTP requests to WebUntis (including hedged duplicates)", Metrics.DURATION_BUCKETS);
+    private static final Metrics.Counter requestErrors = Metrics.counter("webuntis_request_errors_total",
+            "Failed attempts of WebUntis calls (retried if the deadline allows it)");
+    private static final Metrics.Counter callFailures = Metrics.counter("webuntis_call_failures_total",
+            "WebUntis calls that failed after all retries");
+    private static final Metrics.Counter hedgedRequests = Metrics.counter("webuntis_hedged_requests_total",
+            "Duplicate requests that were sent because the response took longer than the p95 latency");
+    
+    static {
+        Metrics.counterFunction("timetable_cache_hits_total", "Timetable weeks served from the cache", () -> getCacheStat("hits"));
+        Metrics.counterFunction("timetable_cache_misses_total", "Timetable weeks not found in the cache", () -> getCacheStat("misses"));
+        Metrics.gauge("timetable_cache_hit_ratio", "Hits / (hits + misses) of the timetable cache", () -> getCacheStat("hitRatio"));
+        Metrics.gauge("timetable_cache_entries", "Cached timetable weeks", () -> getCacheStat("entries"));
+        Metrics.gauge("webuntis_sessions", "Registered WebUntis sessions (logged in users)", () -> sessions.size());
+    }
+    
+    private static final ExecutorService requestExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "webuntis-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * Returns the first and last period per day for the A and B week starting with the given reference date.
+     * <br><br>
+     * Both weeks are retrieved with a single range query (monday of the A week until friday of the B week).
+     * The response is split into weeks locally and cached per week, so the per-week cache keys stay valid.
+     * Stale cache entries are refreshed in the background. If the refresh doesn't finish within the
+     * configured grace period (system property <code>webuntis.cache.staleGraceMs</code>, default: 2000),
+     * the stale timetable is returned.
+     * 
+     * @param session the session of the user
+     * @param teacherInitials the initials of the teacher
+     * @param scheduleReferenceStartDate the monday of the A week (e.g. 20210830)
+     * @return the first and last period per day (key: date, e.g. 20210831)
+     * @throws Exception if the timetable cannot be retrieved
+     */
+    public static Map<Integer, Period> getTimetable(WebUntisSession session, String teacherInitials, int scheduleReferenceStartDate) throws Exception {
+        checkTimetableRequest(session, teacherInitials);
+        CachedTimetable cachedTimetable = getCachedTimetable(session, teacherInitials, scheduleReferenceStartDate);
+        if (cachedTimetable == null) {
+            return fetchTimetable(session, teacherInitials, scheduleReferenceStartDate);
+        }
+        if (!cachedTimetable.stale) {
+            return cachedTimetable.timetable;
+        }
+        // stale-while-revalidate: wait a little for the refresh, serve the stale timetable if WebUntis is slow
+        String key = getTimetableCacheKey(teacherInitials, scheduleReferenceStartDate);
+        CompletableFuture<Map<Integer, Period>> refresh = refreshesInFlight.computeIfAbsent(key,
+                k -> CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return fetchTimetable(session, teacherInitials, scheduleReferenceStartDate);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, refreshExecutor));
+        // registered outside of computeIfAbsent: a refresh that is already done would modify the map recursively
+        refresh.whenComplete((timetable, e) -> refreshesInFlight.remove(key, refresh));
+        try {
+            return refresh.get(STALE_GRACE_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return cachedTimetable.timetable;
+        }
+    }
+    
+    /**
+     * Returns the timetables (first and last period per day, see {@link #getTimetable(WebUntisSession, String, int)}) for many
+     * teachers at once. The getTimetable calls are packed into JSON-RPC batch requests of the given size and
+     * the responses are matched back to the teachers by their id. If the server rejects batch requests, the
+     * timetables are requested with single calls instead. Stale cache entries are handled like in
+     * {@link #getTimetable(WebUntisSession, String, int)}.
+     * 
+     * @param session the session of the user
+     * @param teacherInitials the initials of the teachers
+     * @param scheduleReferenceStartDate the monday of the A week (e.g. 20210830)
+     * @param batchSize the max. number of calls per batch request
+     * @param failures is filled with the error messages by initials for timetables that couldn't be retrieved
+     * @return the timetables by initials (only contains the successfully retrieved timetables)
+     * @throws Exception if not logged in
+     */
+    public static Map<String, Map<Integer, Period>> getTimetables(WebUntisSession session, List<String> teacherInitials, int scheduleReferenceStartDate,
+            int batchSize, Map<String, String> failures) throws Exception {
+        if (!session.isLoggedIn()) {
+            throw new Exception("Must be logged in to query data from WebUntis.");
+        }
+        Map<String, Map<Integer, Period>> timetables = new HashMap<>();
+        Map<String, Map<Integer, Period>> staleTimetables = new HashMap<>();
+        List<String> uncachedInitials = new ArrayList<>();
+        for (String initials : new LinkedHashSet<>(teacherInitials)) {
+            if (initials == null || initials.isEmpty()) {
+                failures.put(String.valueOf(initials), "No teacher initials specified.");
+                continue;
+            }
+            CachedTimetable cachedTimetable = getCachedTimetable(session, initials, scheduleReferenceStartDate);
+            if (cachedTimetable == null) {
+                uncachedInitials.add(initials);
+            } else if (cachedTimetable.stale) {
+                staleTimetables.put(initials, cachedTimetable.timetable);
+            } else {
+                timetables.put(initials, cachedTimetable.timetable);
+            }
+        }
+        // refresh stale entries in the background
+        CompletableFuture<Map<String, Map<Integer, Period>>> refresh = null;
+        Map<String, String> refreshFailures = new ConcurrentHashMap<>();
+        if (!staleTimetables.isEmpty()) {
+            List<String> staleInitials = new ArrayList<>(staleTimetables.keySet());
+            refresh = CompletableFuture.supplyAsync(
+                    () -> fetchTimetables(session, staleInitials, scheduleReferenceStartDate, batchSize, refreshFailures), refreshExecutor);
+        }
+        timetables.putAll(fetchTimetables(session, uncachedInitials, scheduleReferenceStartDate, batchSize, failures));
+        if (refresh != null) {
+            try {
+                Map<String, Map<Integer, Period>> refreshedTimetables = refresh.get(STALE_GRACE_MS, TimeUnit.MILLISECONDS);
+                staleTimetables.putAll(refreshedTimetables);
+            } catch (TimeoutException | ExecutionException e) {
+                // WebUntis is slow: serve the stale timetables, the refresh continues in the background
+            }
+            timetables.putAll(staleTimetables);
+        }
+        return timetables;
+    }
+    
+    /**
+     * Fetches the timetables with batch requests (no cache lookup). See {@link #getTimetables(WebUntisSession, List, int, int, Map)}.
+     */
+    private static Map<String, Map<Integer, Period>> fetchTimetables(WebUntisSession session, List<String> teacherInitials, int scheduleReferenceStartDate,
+            int batchSize, Map<String, String> failures) {
+        Map<String, Map<Integer, Period>> timetables = new HashMap<>();
+        int effectiveBatchSize = Math.max(1, batchSize);
+        for (int i = 0; i < teacherInitials.size(); i += effectiveBatchSize) {
+            List<String> batch = teacherInitials.subList(i, Math.min(i + effectiveBatchSize, teacherInitials.size()));
+            Map<String, TimetableResponseReader.Result> resultsById;
+            try {
+                resultsById = batch.size() > 1 && batchRequestsSupported
+                        ? executeTimetableBatch(session, batch, scheduleReferenceStartDate)
+                        : null;
+            } catch (Exception e) {
+                // the whole batch failed (after retries)
+                for (String initials : batch) {
+                    failures.put(initials, String.valueOf(e.getMessage()));
+                }
+                continue;
+            }
+            for (String initials : batch) {
+                try {
+                    Map<Integer, Period> timetable;
+                    TimetableResponseReader.Result result = resultsById != null ? resultsById.get(initials) : null;
+                    if (resultsById == null) {
+                        // batches not supported: single request
+                        timetable = fetchTimetable(session, initials, scheduleReferenceStartDate);
+                    } else if (result != null) {
+                        if (result.timetable == null) {
+                            throw new Exception(result.error);
+                        }
+                        timetable = processTimetable(result.timetable, initials, scheduleReferenceStartDate);
+                    } else {
+                        throw new Exception("No response received for " + initials + ".");
+                    }
+                    timetables.put(initials, timetable);
+                } catch (Exception e) {
+                    failures.put(initials, String.valueOf(e.getMessage()));
+                }
+            }
+        }
+        return timetables;
+    }
+    
+    /**
+     * Sends the getTimetable calls for the given teachers as one JSON-RPC batch request.
+     * The response is parsed while it is received (see {@link TimetableResponseReader}).
+     * 
+     * @return the results by id (= initials) or null if the server doesn't handle batch requests
+     * @throws Exception if the batch request failed
+     */
+    private static Map<String, TimetableResponseReader.Result> executeTimetableBatch(WebUntisSession session, List<String> teacherInitials, int scheduleReferenceStartDate) throws Exception {
+        List<Map<String, Object>> calls = new ArrayList<>();
+        for (String initials : teacherInitials) {
+            calls.add(createCall("getTimetable", getTimetableParams(initials, scheduleReferenceStartDate), initials));
+        }
+        Map<String, TimetableResponseReader.Result> resultsById = post(session, calls, TimetableResponseReader::readTimetableBatch, RequestType.TIMETABLE_BATCH);
+        if (resultsById == null) {
+            // not an array: the server doesn't handle batches
+            System.err.println("Falling back to single requests.");
+            batchRequestsSupported = false;
+        }
+        return resultsById;
+    }
+    
+    private static void checkTimetableRequest(WebUntisSession session, String teacherInitials) throws Exception {
         if (teacherInitials == null || teacherInitials.isEmpty()) {
             throw new Exception("No teacher initials specified.");
         }
-        if (sessionId == null) {
+        if (!session.isLoggedIn()) {
             throw new Exception("Must be logged in to query data from WebUntis.");
         }
+    }
+    
+    /**
+     * Requests the timetable (A and B week) from WebUntis (no cache lookup)
+     */
+    private static Map<Integer, Period> fetchTimetable(WebUntisSession session, String teacherInitials, int scheduleReferenceStartDate) throws Exception {
+        // one request from monday (A week) to friday (B week)
+        Map<Integer, Period> timetable = post(session, createCall("getTimetable", getTimetableParams(teacherInitials, scheduleReferenceStartDate), APP_ACCESS_ID),
+                reader -> TimetableResponseReader.readTimetable(reader, teacherInitials), RequestType.TIMETABLE);
+        if (timetable == null) {
+            throw new Exception("No timetable received from WebUntis.");
+        }
+        return processTimetable(timetable, teacherInitials, scheduleReferenceStartDate);
+    }
+    
+    /**
+     * Returns the timetable if both weeks are cached, otherwise null. The timetable is stale if one of the weeks is stale.
+     */
+    private static CachedTimetable getCachedTimetable(WebUntisSession session, String teacherInitials, int scheduleReferenceStartDate) {
+        int bWeekStartDate = Util.calculateDateNumber(scheduleReferenceStartDate, 7);
+        TimetableCache.CachedWeek aWeek = timetableCache.get(getTimetableCacheKey(teacherInitials, scheduleReferenceStartDate));
+        TimetableCache.CachedWeek bWeek = timetableCache.get(getTimetableCacheKey(teacherInitials, bWeekStartDate));
+        if (aWeek == null || bWeek == null) {
+            session.cacheMisses.increment();
+            return null;
+        }
+        session.cacheHits.increment();
+        CachedTimetable cachedTimetable = new CachedTimetable();
+        cachedTimetable.timetable = new TreeMap<>();
+        addCachedDays(cachedTimetable.timetable, aWeek.days);
+        addCachedDays(cachedTimetable.timetable, bWeek.days);
+        cachedTimetable.stale = timetableCache.isStale(aWeek) || timetableCache.isStale(bWeek);
+        return cachedTimetable;
+    }
+    
+    private static void addCachedDays(Map<Integer, Period> timetable, int[] days) {
+        for (int i = 0; i + 2 < days.length; i += 3) {
+            Period period = new Period();
+            period.date = days[i];
+            period.startTime = days[i + 1];
+            period.endTime = days[i + 2];
+            timetable.put(period.date, period);
+        }
+    }
+    
+    /**
+     * Caches the retrieved timetable (first and last period per day of the A and B week),
+     * the two weeks are cached separately (only the date, start and end time per day).
+     * The content hash is recorded to detect changes.
+     */
+    private static Map<Integer, Period> processTimetable(Map<Integer, Period> timetable, String teacherInitials, int scheduleReferenceStartDate) {
+        int bWeekStartDate = Util.calculateDateNumber(scheduleReferenceStartDate, 7);
+        cacheTimetable(timetable, teacherInitials, scheduleReferenceStartDate, bWeekStartDate);
+        if (changeTracker.record(teacherInitials, scheduleReferenceStartDate, TimetableChangeTracker.hash(timetable))) {
+            System.out.println("Timetable of " + teacherInitials + " changed (reference week " + scheduleReferenceStartDate + ")");
+        }
+        return timetable;
+    }
+    
+    /**
+     * Splits the reduced timetable into weeks and caches them separately
+     */
+    private static void cacheTimetable(Map<Integer, Period> timetable, String teacherInitials, int scheduleReferenceStartDate, int bWeekStartDate) {
+        List<Period> aWeek = new ArrayList<>();
+        List<Period> bWeek = new ArrayList<>();
+        for (Period period : timetable.values()) {
+            (period.date < bWeekStartDate ? aWeek : bWeek).add(period);
+        }
+        timetableCache.put(getTimetableCacheKey(teacherInitials, scheduleReferenceStartDate), toCachedDays(aWeek));
+        timetableCache.put(getTimetableCacheKey(teacherInitials, bWeekStartDate), toCachedDays(bWeek));
+    }
+    
+    private static int[] toCachedDays(List<Period> periods) {
+        int[] days = new int[periods.size() * 3];
+        int i = 0;
+        for (Period period : periods) {
+            days[i++] = period.date;
+            days[i++] = period.startTime;
+            days[i++] = period.endTime;
+        }
+        return days;
+    }
+    
+    /**
+     * @return the number of cached weeks, hits, misses and evictions of the timetable cache
+     */
+    public static Map<String, Object> getCacheStats() {
+        return timetableCache.getStats();
+    }
+    
+    private static double getCacheStat(String key) {
+        return ((Number) timetableCache.getStats().get(key)).doubleValue();
+    }
+    
+    /**
+     * Returns the teachers whose timetable changed (compared to the previously fetched timetable) at or after
+     * the given time. Timetables served from the cache are unchanged by definition.
+     * 
+     * @param scheduleReferenceStartDate the reference week or 0 for all weeks
+     * @param since time in milliseconds (epoch)
+     */
+    public static List<Map<String, Object>> getTimetableChanges(int scheduleReferenceStartDate, long since) {
+        return changeTracker.getChanges(scheduleReferenceStartDate, since);
+    }
+    
+    /**
+     * Removes cached timetables (all or those of the given teacher).
+     * 
+     * @param teacherInitials the initials of the teacher or null to clear the whole cache
+     * @return the number of removed weeks
+     */
+    public static int clearCache(String teacherInitials) {
+        if (teacherInitials == null || teacherInitials.isEmpty()) {
+            return timetableCache.clear();
+        }
+        return timetableCache.clear(teacherInitials);
+    }
+
+    /**
+     * Returns the getTimetable params for the range monday (A week) until friday (B week)
+     */
+    private static Map<String, Object> getTimetableParams(String teacherInitials, int scheduleReferenceStartDate) {
         Map<String, Object> params = new HashMap<>();
         Map<String, Object> options = new HashMap<>();
         Map<String, Object> teacher = new HashMap<>();
@@ -50,70 +467,37 @@ public class WebUntisAdapter {
         teacher.put("keyType", "name");
         options.put("element", teacher);
         options.put("teacherFields", Arrays.asList("id", "name", "externalkey"));
-        options.put("startDate", startDate);
-        options.put("endDate", Util.calculateDateNumber(startDate, 4));
+        options.put("startDate", scheduleReferenceStartDate);
+        options.put("endDate", Util.calculateDateNumber(scheduleReferenceStartDate, 11));
         params.put("options", options);
-        String response = execute("getTimetable", params);
-        TimetableWrapper timetableWrapper = new Gson().fromJson(response, TimetableWrapper.class);
-        Map<Integer, Period> comingAndGoing = new HashMap<>();
-        try {
-        	List<Period> relevantPeriods = timetableWrapper.result.stream()
-        			.filter(p -> TimetableHelper.isPeriodRelevant(p, teacherInitials))
-        			.collect(Collectors.toList());
-            for (Period item : relevantPeriods) {
-                Period timetableItem = comingAndGoing.get(item.date);
-                if (timetableItem == null) {
-                    comingAndGoing.put(item.date, item);
-                } else {
-                    if (item.startTime < timetableItem.startTime) {
-                        timetableItem.startTime = item.startTime;
-                    }
-                    if (item.endTime > timetableItem.endTime) {
-                        timetableItem.endTime = item.endTime;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            String msg = e.getMessage();
-            try {
-                msg = (String) timetableWrapper.error.get("message");
-            } catch (Exception e1) {
-            }
-            throw new Exception(msg);
-//            java.lang.Exception: no such element elementId:Ul, elementType:2
-        }
-        return new TreeMap<>(comingAndGoing);
+        return params;
     }
 
-    public static Map<Integer, Period>  getTimetable(String teacherInitials, int scheduleReferenceStartDate) throws Exception {
-        Map<Integer, Period> timetable = getTimetableBasedOnStartDate(teacherInitials, scheduleReferenceStartDate);
-        int bWeekStartDate = Util.calculateDateNumber(scheduleReferenceStartDate, 7);
-        timetable.putAll(getTimetableBasedOnStartDate(teacherInitials, bWeekStartDate));
-		return timetable;
+    private static String getTimetableCacheKey(String teacherInitials, int weekStartDate) {
+        return TimetableCache.getKey(URL_SCHOOL_NGW, teacherInitials, weekStartDate);
     }
     
-    public static String login(String user, String password) throws Exception {
+    private static class CachedTimetable {
+        Map<Integer, Period> timetable;
+        boolean stale;
+    }
+    
+    public static String login(WebUntisSession session, String user, String password) throws Exception {
         Map<String, Object> params = new HashMap<>();
         params.put("user", user);
         params.put("password", password);
         params.put("client", "Java");
         
-        // load cache from file
-//        if (requestResultCache.isEmpty() && CACHE_FILE != null) {
-//        	String content = Util.readStringFromFile(CACHE_FILE);
-//        	if (content != null && !content.isBlank()) {
-//        		Type type = new TypeToken<Map<String, String>>() {
-//    			}.getType();
-//            	requestResultCache = new Gson().fromJson(content, type);
-//        	}
-//        }
-        
-        String responseString = execute("authenticate", params);
+        String responseString = execute(session, "authenticate", params);
         
         Map<?,?> m1 = new Gson().fromJson(responseString, Map.class);
+        String sessionId;
         try {
             Map<?,?> m2 = (Map<?,?>) m1.get("result");
             sessionId = (String) m2.get("sessionId");
+            session.sessionId = sessionId;
+            session.user = user;
+            lastLoggedInSession = session;
         } catch (Exception e) {
             String s = e.getMessage();
             try {
@@ -126,98 +510,357 @@ public class WebUntisAdapter {
         return sessionId;
     }
     
-    public static String logout() throws Exception {
+    public static String logout(WebUntisSession session) throws Exception {
         
 //        if (sessionId == null) throw new Exception("Not logged in!");
         
         Map<String, Object> params = new HashMap<>();
         
-        String responseString = execute("logout", params);
-        
-        sessionId = null;
-        
-        // store cache in file
-//        if (CACHE_FILE != null) {
-//        	String content = JsonUtil.toJson(requestResultCache);
-//        	Util.writeStringToFile(CACHE_FILE, content);
-//        }
-        
-        return responseString;
+        try {
+            return execute(session, "logout", params);
+        } finally {
+            session.sessionId = null;
+            if (lastLoggedInSession == session) {
+                lastLoggedInSession = null;
+            }
+            
+            // store cache in file
+            timetableCache.save();
+        }
     }
     
-    public static String execute(String methodName) {
+    public static String execute(WebUntisSession session, String methodName) throws Exception {
     	Map<String, Object> obj = new HashMap<>();
         obj.put("method", methodName);
         obj.put("id", APP_ACCESS_ID);
         obj.put("jsonrpc", JSON_RPC_VERSION);
-        String requestId = methodName;
-        return post(obj, requestId);
+        return post(session, obj);
     }
     
-    public static String execute(String methodName, Map<String, Object> params) {
-                
+    public static String execute(WebUntisSession session, String methodName, Map<String, Object> params) throws Exception {
+        String s = post(session, createCall(methodName, params, APP_ACCESS_ID));
+        return s;
+    }
+    
+    private static Map<String, Object> createCall(String methodName, Map<String, Object> params, String id) {
         Map<String, Object> obj = new HashMap<>();
         obj.put("method", methodName);
-        obj.put("id", APP_ACCESS_ID);
+        obj.put("id", id);
         obj.put("jsonrpc", JSON_RPC_VERSION);
         obj.put("params", params);
-        
-        String requestId = methodName;
-        try {
-        	if (params.get("options") != null) {
-        		requestId += "-" + ((Map<?,?>)((Map<?,?>)params.get("options")).get("element")).get("id");
-        		requestId += "-" + ((Map<?,?>)params.get("options")).get("startDate");
-        	}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-        String s = post(obj, requestId);
-        return s;
+        return obj;
     }
-
-    private static String post(Object payload, String requestId) {
-    	// try cache
-    	String cachedResult = requestResultCache.get(requestId);
-    	if (cachedResult != null) {
-    		return cachedResult;
+    
+    /**
+     * Aborts all requests of the session that are currently in flight. The aborted requests fail with an IOException.
+     */
+    public static void abortPendingRequests(WebUntisSession session) {
+    	session.abortCounter.incrementAndGet();
+    	for (HttpPost post : session.pendingRequests) {
+    		post.abort();
     	}
-    	// real request
-        String responseString = null;
-        HttpPost post = new HttpPost(URL_SCHOOL_NGW);
+    }
+
+    /**
+     * Returns the registered session for the token of a request. There is no fallback to another user's session:
+     * missing and unknown tokens (e.g. of removed sessions) return null. Sessions that haven't been used for a
+     * while are removed.
+     * 
+     * @param token the session token or null
+     * @return the session or null
+     */
+    public static WebUntisSession getSession(String token) {
+        removeIdleSessions();
+        WebUntisSession session = findSession(token);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    /**
+     * @return the session of the latest login or the placeholder session if nobody is logged in (for calculations
+     * that are not requested by a user, never for the requests of the web service)
+     */
+    public static WebUntisSession getInternalSession() {
+        WebUntisSession session = lastLoggedInSession;
+        return session != null ? session : defaultSession;
+    }
+
+    /**
+     * @return the registered session for the token or null
+     */
+    public static WebUntisSession findSession(String token) {
+        return token != null ? sessions.get(token) : null;
+    }
+
+    /**
+     * Creates and registers a new session with a random token (used for the login of a user).
+     */
+    public static WebUntisSession createSession() {
+        WebUntisSession session = new WebUntisSession(UUID.randomUUID().toString(), MAX_CONNECTIONS_PER_SESSION);
+        sessions.put(session.getToken(), session);
+        return session;
+    }
+
+    /**
+     * Unregisters the session (e.g. after the logout). Requests with its token are rejected afterwards.
+     */
+    public static void removeSession(WebUntisSession session) {
+        sessions.remove(session.getToken(), session);
+    }
+
+    /**
+     * Changes the JSON-RPC endpoint (used by the tests for a {@link WebUntisStandIn} on a free port).
+     */
+    static void setUrl(String url) {
+        URL_SCHOOL_NGW = url;
+    }
+
+    /**
+     * @return the statistics of the default session and all registered sessions
+     */
+    public static List<Map<String, Object>> getSessionStats() {
+        removeIdleSessions();
+        List<Map<String, Object>> stats = new ArrayList<>();
+        stats.add(defaultSession.getStats());
+        sessions.values().forEach(session -> stats.add(session.getStats()));
+        return stats;
+    }
+
+    private static void removeIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (WebUntisSession idleSession : sessions.values()) {
+            if (now - idleSession.getLastUsedAt() > SESSION_IDLE_MS && idleSession.pendingRequests.isEmpty()
+                    && sessions.remove(idleSession.getToken(), idleSession) && idleSession.isLoggedIn()) {
+                // end the WebUntis session as well (best effort, in the background)
+                requestExecutor.execute(() -> {
+                    try {
+                        logout(idleSession);
+                    } catch (Exception e) {
+                        // ignored, WebUntis drops the session after its own timeout
+                    }
+                });
+            }
+        }
+        WebUntisSession session = lastLoggedInSession;
+        if (session != null && session != defaultSession && !sessions.containsKey(session.getToken())) {
+            lastLoggedInSession = null;
+        }
+    }
+
+    /**
+     * Creates the pooled http client. The following system properties can be used for configuration:
+     * <ul>
+     * <li>webuntis.maxConnections: max. number of pooled connections (default: 20)</li>
+     * <li>webuntis.connectTimeout: connect timeout in milliseconds (default: 5000)</li>
+     * <li>webuntis.readTimeout: read (socket) timeout in milliseconds (default: 30000)</li>
+     * </ul>
+     */
+    private static CloseableHttpClient createHttpClient() {
+    	int maxConnections = Util.getIntProperty("webuntis.maxConnections", 20);
+    	int connectTimeout = Util.getIntProperty("webuntis.connectTimeout", 5000);
+    	int readTimeout = Util.getIntProperty("webuntis.readTimeout", 30000);
+    	PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    	// all requests go to the same host, so the per-route limit must not be lower than the total limit
+    	connectionManager.setMaxTotal(maxConnections);
+    	connectionManager.setDefaultMaxPerRoute(maxConnections);
+    	RequestConfig requestConfig = RequestConfig.custom()
+    			.setConnectTimeout(connectTimeout)
+    			.setConnectionRequestTimeout(connectTimeout)
+    			.setSocketTimeout(readTimeout)
+    			.setContentCompressionEnabled(true) // sends "Accept-Encoding: gzip,deflate" and decodes the response
+    			.build();
+    	return HttpClients.custom()
+    			.setConnectionManager(connectionManager)
+    			.setDefaultRequestConfig(requestConfig)
+    			.setKeepAliveStrategy((response, context) -> {
+    				// keep connections alive for a while if the server doesn't say otherwise
+    				long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+    				return keepAlive > 0 ? keepAlive : DEFAULT_KEEP_ALIVE_MS;
+    			})
+    			.evictIdleConnections(DEFAULT_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS)
+    			// the session cookie is set explicitly for each request
+    			.disableCookieManagement()
+    			.build();
+    }
+
+    /**
+     * Reads the response body (the reader is closed by the caller)
+     */
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Reader reader) throws Exception;
+    }
+    
+    private static String post(WebUntisSession session, Object payload) throws Exception {
+        return post(session, payload, reader -> {
+            StringWriter writer = new StringWriter();
+            reader.transferTo(writer);
+            return writer.toString();
+        }, RequestType.OTHER);
+    }
+    
+    /**
+     * Sends the payload and passes the response body as a stream to the response reader,
+     * so large responses can be processed without reading them into a string first.
+     * <br><br>
+     * Failed getTimetable requests (I/O errors, HTTP 5xx and 429) are retried with an exponential backoff (capped,
+     * with jitter) until the deadline of the call is reached. Other calls (e.g. authenticate) are not idempotent and
+     * are sent only once. Errors of the response reader (e.g. error messages from WebUntis) are not retried.
+     * 
+     * @param type the shape of the call (retries, hedging and latency statistics)
+     * @return the value returned by the response reader or null if the response has no body
+     * @throws Exception if the call failed or the deadline was exceeded
+     */
+    private static <T> T post(WebUntisSession session, Object payload, ResponseReader<T> responseReader, RequestType type) throws Exception {
         String json = new Gson().toJson(payload);
+        long deadline = System.currentTimeMillis() + DEADLINE_MS;
+        long abortCount = session.abortCounter.get();
+        IOException lastException = null;
+        int maxRetries = type.retried ? MAX_RETRIES : 0;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                long backoff = Math.min(MAX_RETRY_BACKOFF_MS, (long) RETRY_BACKOFF_MS << Math.min(attempt - 1, 20));
+                // full jitter: spreads the retries of concurrent requests
+                backoff = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                if (System.currentTimeMillis() + backoff >= deadline) {
+                    break;
+                }
+                Thread.sleep(backoff);
+            }
+            try {
+                return postWithDeadline(session, json, responseReader, type, deadline);
+            } catch (IOException e) {
+                lastException = e;
+                if (session.abortCounter.get() != abortCount) {
+                    throw new IOException("The request to WebUntis was aborted.", e);
+                }
+                requestErrors.increment();
+                System.err.println("Request to WebUntis failed (attempt " + (attempt + 1) + "): " + e.getMessage());
+            }
+        }
+        session.failedRequests.increment();
+        callFailures.increment();
+        throw new IOException("No response from WebUntis" + (type.retried ? " within " + DEADLINE_MS + " ms" : "")
+                + (lastException != null ? ": " + lastException.getMessage() : "."), lastException);
+    }
+    
+    /**
+     * Executes the request (and a hedged duplicate if enabled for the type) and waits until the deadline for the
+     * first answer. All requests that are still in flight afterwards are aborted.
+     */
+    private static <T> T postWithDeadline(WebUntisSession session, String json, ResponseReader<T> responseReader, RequestType type, long deadline) throws Exception {
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        List<HttpPost> posts = new ArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        try {
+            startRequest(session, json, responseReader, type, posts, running, winner);
+            long hedgeDelay = getHedgeDelay(type);
+            long remaining = deadline - System.currentTimeMillis();
+            if (type.hedged && HEDGING_ENABLED && hedgeDelay > 0 && hedgeDelay < remaining) {
+                try {
+                    return winner.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // slower than usual: send a duplicate request, the first answer wins
+                    hedgedRequests.increment();
+                    startRequest(session, json, responseReader, type, posts, running, winner);
+                }
+            }
+            return winner.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IOException("Deadline exceeded.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            synchronized (posts) {
+                posts.forEach(HttpPost::abort);
+            }
+        }
+    }
+    
+    private static <T> void startRequest(WebUntisSession session, String json, ResponseReader<T> responseReader, RequestType type,
+            List<HttpPost> posts, AtomicInteger running, CompletableFuture<T> winner) {
+        HttpPost post = new HttpPost(URL_SCHOOL_NGW);
+        synchronized (posts) {
+            posts.add(post);
+        }
+        running.incrementAndGet();
+        requestExecutor.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                T result = execute(session, post, json, responseReader);
+                long duration = System.nanoTime() - start;
+                type.latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(duration));
+                requestDuration.observeNanos(duration);
+                winner.complete(result);
+            } catch (Exception e) {
+                // only fail if no other request can answer anymore
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * @return the p95 latency of the recent requests of the same type or -1 if there are not enough samples yet
+     */
+    private static long getHedgeDelay(RequestType type) {
+        LatencyTracker latencyTracker = type.latencyTracker;
+        if (latencyTracker.getCount() < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, latencyTracker.getPercentile(0.95));
+    }
+    
+    /**
+     * Executes the request with one of the connections of the session (waits if all are in use).
+     */
+    private static <T> T execute(WebUntisSession session, HttpPost post, String json, ResponseReader<T> responseReader) throws Exception {
         HttpEntity body = new StringEntity(json, ContentType.APPLICATION_JSON);
         post.setEntity(body);
         post.addHeader("Content-Type", "application/json");
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            if (sessionId != null) {
-                post.addHeader("Cookie", JSESSIONID + "=" + sessionId);
+        String sessionId = session.sessionId;
+        if (sessionId != null) {
+            post.addHeader("Cookie", JSESSIONID + "=" + sessionId);
+        }
+        session.connections.acquire();
+        session.pendingRequests.add(post);
+        session.requests.increment();
+        try {
+            if (post.isAborted()) {
+                throw new IOException("The request to WebUntis was aborted.");
+            }
+            return execute(post, responseReader);
+        } finally {
+            session.pendingRequests.remove(post);
+            session.connections.release();
+        }
+    }
+    
+    private static <T> T execute(HttpPost post, ResponseReader<T> responseReader) throws Exception {
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode >= 500 || statusCode == 429) {
+                throw new IOException("WebUntis responded with HTTP " + statusCode + ".");
             }
-            CloseableHttpResponse response = httpClient.execute(post);
             HttpEntity entity = response.getEntity();
-            responseString = EntityUtils.toString(entity);
-        } catch (IOException e) {
-            System.err.println("IO Exception during request.");
-            e.printStackTrace();
-        } catch (ParseException e) {
-            System.err.println("Response could not be parsed.");
-            e.printStackTrace();
-        }
-        // cache result
-        requestResultCache.put(requestId, responseString);
-        
-//        if (requestId != null && requestId.contains("Kl")) {
-//        	System.err.println();
-//        	System.err.println("Request ID:");
-//            System.err.println(requestId);
-//            System.err.println("Cached Result:");
-//            System.err.println(cachedResult);
-//            System.err.println("Retrieved Result:");
-//            System.err.println(responseString);
-//            System.err.println(responseString.equals(cachedResult));
-//            System.err.println();
-//        }
-        
-        return responseString;
+            if (entity == null) {
+                return null;
+            }
+            Charset charset;
+            try {
+                charset = ContentType.getOrDefault(entity).getCharset();
+            } catch (ParseException | UnsupportedCharsetException e) {
+                charset = null;
+            }
+            // closing the content stream releases the connection back to the pool
+            try (Reader reader = new InputStreamReader(entity.getContent(), charset != null ? charset : StandardCharsets.UTF_8)) {
+                return responseReader.read(reader);
+            }
+        }
     }
     
 }
@@ -0,0 +1,91 @@
+package com.thabok.untis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.client.methods.HttpPost;
+
+/**
+ * The WebUntis context of one user of the backend (identified by a session token): the WebUntis session,
+ * the requests in flight (so cancelling only aborts the requests of this user), a limit for the concurrent
+ * requests (so one user can't occupy all pooled connections) and statistics. The timetable cache is shared
+ * by all sessions, each session only counts its own hits and misses.
+ * @author thabok
+ */
+public class WebUntisSession {
+
+	private final String token;
+	private final long createdAt = System.currentTimeMillis();
+	private volatile long lastUsedAt = createdAt;
+
+	/**
+	 * JSESSIONID of the WebUntis session (null if not logged in)
+	 */
+	volatile String sessionId;
+	volatile String user;
+
+	/**
+	 * Limits the number of concurrent requests of this session
+	 */
+	final Semaphore connections;
+
+	/**
+	 * Requests that are currently in flight (used to abort them if the user cancels the operation)
+	 */
+	final Set<HttpPost> pendingRequests = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Incremented by {@link WebUntisAdapter#abortPendingRequests(WebUntisSession)}, aborted calls are not retried
+	 */
+	final AtomicLong abortCounter = new AtomicLong();
+
+	final LongAdder requests = new LongAdder();
+	final LongAdder failedRequests = new LongAdder();
+	final LongAdder cacheHits = new LongAdder();
+	final LongAdder cacheMisses = new LongAdder();
+
+	WebUntisSession(String token, int maxConnections) {
+		this.token = token;
+		this.connections = new Semaphore(Math.max(1, maxConnections), true);
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public boolean isLoggedIn() {
+		return sessionId != null;
+	}
+
+	public long getLastUsedAt() {
+		return lastUsedAt;
+	}
+
+	void touch() {
+		lastUsedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the state and the statistics of the session (the token is shortened)
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("token", token.length() > 8 ? token.substring(0, 8) + "..." : token);
+		stats.put("user", user);
+		stats.put("loggedIn", isLoggedIn());
+		stats.put("createdAt", createdAt);
+		stats.put("lastUsedAt", lastUsedAt);
+		stats.put("requests", requests.sum());
+		stats.put("failedRequests", failedRequests.sum());
+		stats.put("requestsInFlight", pendingRequests.size());
+		stats.put("cacheHits", cacheHits.sum());
+		stats.put("cacheMisses", cacheMisses.sum());
+		return stats;
+	}
+
+}
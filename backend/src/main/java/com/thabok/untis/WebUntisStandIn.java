@@ -0,0 +1,399 @@
+package com.thabok.untis;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thabok.util.Util;
+
+import spark.Request;
+import spark.Response;
+import spark.Service;
+
+/**
+ * Local stand-in for the WebUntis JSON-RPC API (authenticate, getTimetable and logout, single calls and batches).
+ * It allows to run the whole pipeline (fetch, convert, plan) without access to WebUntis, e.g. for benchmarks and tests.
+ * Start it with <code>java -cp my-car-time-jar-with-dependencies.jar com.thabok.untis.WebUntisStandIn</code> and
+ * start the backend with <code>-Dwebuntis.url=http://127.0.0.1:8090/WebUntis/jsonrpc.do</code>.
+ * <br><br>
+ * Modes:
+ * <ul>
+ * <li>replay: timetables recorded in the recordings directory (file &lt;initials&gt;.json) are returned, shifted to the requested weeks</li>
+ * <li>synthetic: timetables of all other teachers are generated (see {@link SyntheticTimetable})</li>
+ * <li>record: if an upstream url is configured, all calls are forwarded to WebUntis and the timetables are
+ * stored anonymized (only the attributes relevant for the planning, names of other teachers replaced)</li>
+ * </ul>
+ * Configuration (system properties):
+ * <ul>
+ * <li>standin.port: port of the stand-in (default: 8090)</li>
+ * <li>standin.recordings: directory with the recorded timetables (default: webuntis-recordings)</li>
+ * <li>standin.upstream: WebUntis url for the record mode (default: none)</li>
+ * <li>standin.latencyMs / standin.latencyJitterMs: simulated latency per request (default: 0 / 0)</li>
+ * <li>standin.errorRate: probability that a getTimetable call fails (default: 0.0)</li>
+ * <li>standin.httpErrorRate: probability that a request fails with HTTP 503 (default: 0.0)</li>
+ * <li>standin.slowRate / standin.slowMs: probability and additional latency of very slow responses (default: 0.0 / 5000)</li>
+ * <li>standin.seed: seed for the synthetic timetables (default: 1)</li>
+ * </ul>
+ * @author thabok
+ */
+public class WebUntisStandIn {
+
+	public static final String PATH = "/WebUntis/jsonrpc.do";
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final Pattern VALID_INITIALS = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+	private final int port;
+	private final Path recordingsDir;
+	private final String upstreamUrl;
+	private final int latencyMs;
+	private final int latencyJitterMs;
+	private final double errorRate;
+	private final long seed;
+	private double httpErrorRate;
+	private double slowRate;
+	private int slowMs;
+
+	private final Gson gson = new GsonBuilder().serializeNulls().create();
+	private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+	private final Map<String, JsonArray> recordings = new ConcurrentHashMap<>();
+	private Service http;
+	private CloseableHttpClient upstreamClient;
+
+	public WebUntisStandIn(int port, Path recordingsDir, String upstreamUrl, int latencyMs, int latencyJitterMs, double errorRate, long seed) {
+		this.port = port;
+		this.recordingsDir = recordingsDir;
+		this.upstreamUrl = upstreamUrl == null || upstreamUrl.isBlank() ? null : upstreamUrl;
+		this.latencyMs = Math.max(0, latencyMs);
+		this.latencyJitterMs = Math.max(0, latencyJitterMs);
+		this.errorRate = errorRate;
+		this.seed = seed;
+	}
+
+	public static WebUntisStandIn fromSystemProperties() {
+		WebUntisStandIn standIn = new WebUntisStandIn(
+				Util.getIntProperty("standin.port", 8090),
+				Paths.get(System.getProperty("standin.recordings", "webuntis-recordings")),
+				System.getProperty("standin.upstream"),
+				Util.getIntProperty("standin.latencyMs", 0),
+				Util.getIntProperty("standin.latencyJitterMs", 0),
+				Util.getDoubleProperty("standin.errorRate", 0.0),
+				Util.getIntProperty("standin.seed", 1));
+		standIn.setFaults(Util.getDoubleProperty("standin.httpErrorRate", 0.0),
+				Util.getDoubleProperty("standin.slowRate", 0.0), Util.getIntProperty("standin.slowMs", 5000));
+		return standIn;
+	}
+
+	/**
+	 * Simulates failures that the client has to deal with (retries, hedging).
+	 *
+	 * @param httpErrorRate probability that a request fails with HTTP 503
+	 * @param slowRate probability that a response is delayed by slowMs
+	 * @param slowMs additional latency of the slow responses
+	 */
+	public void setFaults(double httpErrorRate, double slowRate, int slowMs) {
+		this.httpErrorRate = httpErrorRate;
+		this.slowRate = slowRate;
+		this.slowMs = Math.max(0, slowMs);
+	}
+
+	public static void main(String[] args) {
+		WebUntisStandIn standIn = fromSystemProperties();
+		standIn.start();
+		System.out.println("WebUntis stand-in listening on " + standIn.getUrl()
+				+ (standIn.upstreamUrl != null ? " (recording " + standIn.upstreamUrl + ")" : ""));
+	}
+
+	/**
+	 * @return the url to be used for the system property webuntis.url
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + (http != null ? http.port() : port) + PATH;
+	}
+
+	public void start() {
+		if (upstreamUrl != null) {
+			upstreamClient = HttpClients.createDefault();
+		}
+		http = Service.ignite().ipAddress("127.0.0.1").port(port);
+		http.post(PATH, this::handle);
+		http.awaitInitialization();
+	}
+
+	public void stop() {
+		http.stop();
+		http.awaitStop();
+		if (upstreamClient != null) {
+			try {
+				upstreamClient.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private Object handle(Request req, Response res) throws Exception {
+		simulateLatency();
+		res.type("application/json");
+		if (httpErrorRate > 0 && ThreadLocalRandom.current().nextDouble() < httpErrorRate) {
+			res.status(503);
+			return "Service Unavailable";
+		}
+		if (upstreamUrl != null) {
+			return forward(req);
+		}
+		JsonElement request = JsonParser.parseString(req.body());
+		String sessionId = req.cookie("JSESSIONID");
+		if (request.isJsonArray()) {
+			JsonArray responses = new JsonArray();
+			for (JsonElement call : request.getAsJsonArray()) {
+				responses.add(gson.toJsonTree(handleCall(call.getAsJsonObject(), sessionId)));
+			}
+			return gson.toJson(responses);
+		}
+		return gson.toJson(handleCall(request.getAsJsonObject(), sessionId));
+	}
+
+	private Map<String, Object> handleCall(JsonObject call, String sessionId) {
+		JsonElement id = call.get("id");
+		String method = call.has("method") ? call.get("method").getAsString() : "";
+		JsonObject params = call.has("params") && call.get("params").isJsonObject() ? call.getAsJsonObject("params") : new JsonObject();
+		switch (method) {
+		case "authenticate":
+			String newSessionId = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+			sessions.add(newSessionId);
+			Map<String, Object> session = new LinkedHashMap<>();
+			session.put("sessionId", newSessionId);
+			session.put("personType", 2);
+			session.put("personId", 0);
+			return createResult(id, session);
+		case "logout":
+			if (sessionId != null) {
+				sessions.remove(sessionId);
+			}
+			return createResult(id, null);
+		case "getTimetable":
+			if (sessionId == null || !sessions.contains(sessionId)) {
+				return createError(id, -8520, "not authenticated");
+			}
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				return createError(id, -8998, "simulated error");
+			}
+			return getTimetable(id, params);
+		default:
+			return createError(id, -32601, "Method not found");
+		}
+	}
+
+	private Map<String, Object> getTimetable(JsonElement id, JsonObject params) {
+		JsonObject options = params.getAsJsonObject("options");
+		String initials = options.getAsJsonObject("element").get("id").getAsString();
+		int startDate = options.get("startDate").getAsInt();
+		int endDate = options.get("endDate").getAsInt();
+		if (!VALID_INITIALS.matcher(initials).matches()) {
+			return createError(id, -7002, "no such element elementId:" + initials + ", elementType:2");
+		}
+		JsonArray recording = getRecording(initials);
+		if (recording != null) {
+			return createResult(id, replay(recording, startDate, endDate));
+		}
+		return createResult(id, SyntheticTimetable.generate(initials, startDate, endDate, seed));
+	}
+
+	/**
+	 * Shifts the recorded periods by whole weeks, so the recording starts in the week of the requested start date
+	 */
+	private JsonArray replay(JsonArray recording, int startDate, int endDate) {
+		JsonArray periods = new JsonArray();
+		if (recording.size() == 0) {
+			return periods;
+		}
+		LocalDate requestedStart = LocalDate.parse(String.valueOf(startDate), DATE_FORMAT);
+		int firstRecordedDate = Integer.MAX_VALUE;
+		for (JsonElement period : recording) {
+			firstRecordedDate = Math.min(firstRecordedDate, period.getAsJsonObject().get("date").getAsInt());
+		}
+		LocalDate recordedStart = LocalDate.parse(String.valueOf(firstRecordedDate), DATE_FORMAT);
+		long weeks = Math.floorDiv(ChronoUnit.DAYS.between(recordedStart, requestedStart) + 6, 7);
+		for (JsonElement element : recording) {
+			JsonObject period = element.getAsJsonObject().deepCopy();
+			LocalDate date = LocalDate.parse(period.get("date").getAsString(), DATE_FORMAT).plusWeeks(weeks);
+			int shiftedDate = Integer.parseInt(DATE_FORMAT.format(date));
+			if (shiftedDate >= startDate && shiftedDate <= endDate) {
+				period.addProperty("date", shiftedDate);
+				periods.add(period);
+			}
+		}
+		return periods;
+	}
+
+	private JsonArray getRecording(String initials) {
+		JsonArray recording = recordings.get(initials);
+		if (recording == null) {
+			Path file = recordingsDir.resolve(initials + ".json");
+			if (!Files.isRegularFile(file)) {
+				return null;
+			}
+			try {
+				recording = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonArray();
+				recordings.put(initials, recording);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Recording " + file + " could not be read: " + e.getMessage());
+				return null;
+			}
+		}
+		return recording;
+	}
+
+	/**
+	 * Record mode: forwards the request to WebUntis and stores the retrieved timetables anonymized
+	 */
+	private Object forward(Request req) throws IOException {
+		HttpPost post = new HttpPost(upstreamUrl);
+		post.setEntity(new StringEntity(req.body(), ContentType.APPLICATION_JSON));
+		if (req.headers("Cookie") != null) {
+			post.addHeader("Cookie", req.headers("Cookie"));
+		}
+		String responseString;
+		try (CloseableHttpResponse response = upstreamClient.execute(post)) {
+			responseString = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+		}
+		try {
+			JsonElement request = JsonParser.parseString(req.body());
+			JsonElement response = JsonParser.parseString(responseString);
+			Map<String, JsonObject> callsById = new HashMap<>();
+			for (JsonElement call : request.isJsonArray() ? request.getAsJsonArray() : asArray(request)) {
+				callsById.put(call.getAsJsonObject().get("id").getAsString(), call.getAsJsonObject());
+			}
+			for (JsonElement element : response.isJsonArray() ? response.getAsJsonArray() : asArray(response)) {
+				JsonObject single = element.getAsJsonObject();
+				JsonObject call = single.has("id") ? callsById.get(single.get("id").getAsString()) : null;
+				if (call != null && "getTimetable".equals(call.get("method").getAsString()) && single.has("result")) {
+					String initials = call.getAsJsonObject("params").getAsJsonObject("options")
+							.getAsJsonObject("element").get("id").getAsString();
+					record(initials, single.getAsJsonArray("result"));
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Response could not be recorded: " + e.getMessage());
+		}
+		return responseString;
+	}
+
+	private static JsonArray asArray(JsonElement element) {
+		JsonArray array = new JsonArray();
+		array.add(element);
+		return array;
+	}
+
+	private void record(String initials, JsonArray result) throws IOException {
+		if (!VALID_INITIALS.matcher(initials).matches()) {
+			return;
+		}
+		JsonArray anonymized = anonymize(initials, result);
+		Files.createDirectories(recordingsDir);
+		Files.writeString(recordingsDir.resolve(initials + ".json"), gson.toJson(anonymized), StandardCharsets.UTF_8);
+		recordings.put(initials, anonymized);
+		System.out.println("Recorded timetable of " + initials + " (" + anonymized.size() + " periods)");
+	}
+
+	/**
+	 * Keeps only the attributes that are relevant for the planning. The names of other teachers are replaced.
+	 */
+	private static JsonArray anonymize(String initials, JsonArray result) {
+		Map<String, String> pseudonyms = new HashMap<>();
+		JsonArray periods = new JsonArray();
+		for (JsonElement element : result) {
+			JsonObject original = element.getAsJsonObject();
+			JsonObject period = new JsonObject();
+			for (String attribute : new String[] { "date", "startTime", "endTime", "code", "lstype", "activityType" }) {
+				if (original.has(attribute)) {
+					period.add(attribute, original.get(attribute));
+				}
+			}
+			JsonArray subjects = new JsonArray();
+			if (original.has("su") && original.get("su").isJsonArray()) {
+				for (JsonElement su : original.getAsJsonArray("su")) {
+					// only the on-call substitution id is relevant
+					int subjectId = su.getAsJsonObject().has("id") ? su.getAsJsonObject().get("id").getAsInt() : 0;
+					JsonObject subject = new JsonObject();
+					subject.addProperty("id", subjectId == Subject.ON_CALL_SUBSTITUTION_ID ? subjectId : 1);
+					subjects.add(subject);
+				}
+			}
+			period.add("su", subjects);
+			JsonArray teachers = new JsonArray();
+			if (original.has("te") && original.get("te").isJsonArray()) {
+				for (JsonElement te : original.getAsJsonArray("te")) {
+					JsonObject teacher = new JsonObject();
+					for (String attribute : new String[] { "name", "orgname" }) {
+						if (te.getAsJsonObject().has(attribute) && !te.getAsJsonObject().get(attribute).isJsonNull()) {
+							String name = te.getAsJsonObject().get(attribute).getAsString();
+							teacher.addProperty(attribute, name.equals(initials) ? name
+									: pseudonyms.computeIfAbsent(name, n -> "T" + (pseudonyms.size() + 1)));
+						}
+					}
+					teachers.add(teacher);
+				}
+			}
+			period.add("te", teachers);
+			periods.add(period);
+		}
+		return periods;
+	}
+
+	private void simulateLatency() throws InterruptedException {
+		int latency = latencyMs + (latencyJitterMs > 0 ? ThreadLocalRandom.current().nextInt(latencyJitterMs + 1) : 0);
+		if (slowRate > 0 && ThreadLocalRandom.current().nextDouble() < slowRate) {
+			latency += slowMs;
+		}
+		if (latency > 0) {
+			Thread.sleep(latency);
+		}
+	}
+
+	private static Map<String, Object> createResult(JsonElement id, Object result) {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("jsonrpc", "2.0");
+		response.put("id", id);
+		response.put("result", result);
+		return response;
+	}
+
+	private static Map<String, Object> createError(JsonElement id, int code, String message) {
+		Map<String, Object> error = new LinkedHashMap<>();
+		error.put("code", code);
+		error.put("message", message);
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("jsonrpc", "2.0");
+		response.put("id", id);
+		response.put("error", error);
+		return response;
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.thabok.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Starts and stops bounded Java Flight Recorder recordings at runtime (no JVM restart needed). The recordings
+ * use the JDK "profile" settings (GC, locks, hot methods, etc.) plus the {@link JfrEvents} and are written to
+ * a local file when they stop.
+ * <br><br>
+ * A recording stops when it is stopped explicitly, after its max. duration, or when the given stop condition
+ * is met (e.g. the plan job is finished). The following system properties can be used for configuration:
+ * <ul>
+ * <li>recordings.dir: directory of the recording files (default: recordings)</li>
+ * <li>recordings.maxSeconds: max. duration of a recording (default: 1800)</li>
+ * <li>recordings.maxSizeMb: max. size of a recording (default: 200)</li>
+ * <li>recordings.maxActive: max. number of concurrent recordings (default: 2)</li>
+ * </ul>
+ * @author thabok
+ */
+public class FlightRecordings {
+
+	private static final int MAX_RETAINED = 20;
+	private static final long CHECK_INTERVAL_MS = 500;
+
+	private final Path directory;
+	private final int maxSeconds;
+	private final long maxSizeMb;
+	private final int maxActive;
+	private final Map<Long, Entry> recordings = new LinkedHashMap<>();
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "flight-recordings");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static class Entry {
+		final Recording recording;
+		final String jobId;
+		final Path file;
+		final long startedAt = System.currentTimeMillis();
+
+		Entry(Recording recording, String jobId, Path file) {
+			this.recording = recording;
+			this.jobId = jobId;
+			this.file = file;
+		}
+	}
+
+	public FlightRecordings(Path directory, int maxSeconds, long maxSizeMb, int maxActive) {
+		this.directory = directory;
+		this.maxSeconds = Math.max(1, maxSeconds);
+		this.maxSizeMb = Math.max(1, maxSizeMb);
+		this.maxActive = Math.max(1, maxActive);
+	}
+
+	public static FlightRecordings fromSystemProperties() {
+		return new FlightRecordings(Paths.get(System.getProperty("recordings.dir", "recordings")),
+				Util.getIntProperty("recordings.maxSeconds", 1800),
+				Util.getIntProperty("recordings.maxSizeMb", 200),
+				Util.getIntProperty("recordings.maxActive", 2));
+	}
+
+	/**
+	 * Starts a recording.
+	 *
+	 * @param jobId the job that is recorded (part of the file name) or null
+	 * @param seconds the max. duration (limited by recordings.maxSeconds)
+	 * @param sizeMb the max. size (limited by recordings.maxSizeMb)
+	 * @param stopCondition stops the recording once it returns true (e.g. if the job is finished) or null
+	 * @return the status of the recording
+	 * @throws Exception if too many recordings are active or the recording cannot be started
+	 */
+	public synchronized Map<String, Object> start(String jobId, int seconds, long sizeMb, BooleanSupplier stopCondition) throws Exception {
+		long active = recordings.values().stream().filter(e -> e.recording.getState() == RecordingState.RUNNING).count();
+		if (active >= maxActive) {
+			throw new IllegalStateException("There are already " + active + " active recordings (max. " + maxActive + ").");
+		}
+		Files.createDirectories(directory);
+		Recording recording = new Recording(Configuration.getConfiguration("profile"));
+		String name = "mycartime-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-" + recording.getId()
+				+ (jobId != null ? "-" + jobId : "");
+		Path file = directory.resolve(name + ".jfr").toAbsolutePath();
+		recording.setName(name);
+		recording.setToDisk(true);
+		recording.setDestination(file);
+		recording.setDuration(Duration.ofSeconds(Math.max(1, Math.min(seconds, maxSeconds))));
+		recording.setMaxSize(Math.max(1, Math.min(sizeMb, maxSizeMb)) * 1024 * 1024);
+		recording.enable(JfrEvents.SearchEvent.class);
+		recording.enable(JfrEvents.ImprovementEvent.class);
+		recording.enable(JfrEvents.PhaseEvent.class);
+		recording.enable(JfrEvents.TimetableFetchEvent.class);
+		recording.start();
+		Entry entry = new Entry(recording, jobId, file);
+		recordings.put(recording.getId(), entry);
+		removeOldRecordings();
+		if (stopCondition != null) {
+			watch(entry, stopCondition);
+		}
+		System.out.println("Started flight recording " + name + " (" + file + ")");
+		return getStatus(entry);
+	}
+
+	/**
+	 * Stops the recording and writes it to its file.
+	 *
+	 * @return the status of the recording or null if there is no such recording
+	 */
+	public synchronized Map<String, Object> stop(long id) {
+		Entry entry = recordings.get(id);
+		if (entry == null) {
+			return null;
+		}
+		stop(entry);
+		return getStatus(entry);
+	}
+
+	private void stop(Entry entry) {
+		if (entry.recording.getState() == RecordingState.RUNNING) {
+			// writes the destination file
+			entry.recording.stop();
+			System.out.println("Stopped flight recording " + entry.recording.getName() + " (" + entry.file + ")");
+		}
+	}
+
+	/**
+	 * @return the status of the recent recordings
+	 */
+	public synchronized List<Map<String, Object>> getStatus() {
+		List<Map<String, Object>> status = new ArrayList<>();
+		recordings.values().forEach(entry -> status.add(getStatus(entry)));
+		return status;
+	}
+
+	private Map<String, Object> getStatus(Entry entry) {
+		Recording recording = entry.recording;
+		Map<String, Object> status = new LinkedHashMap<>();
+		status.put("id", recording.getId());
+		status.put("name", recording.getName());
+		status.put("state", recording.getState());
+		status.put("jobId", entry.jobId);
+		status.put("startedAt", entry.startedAt);
+		status.put("maxSeconds", recording.getDuration() != null ? recording.getDuration().getSeconds() : 0);
+		status.put("maxSizeBytes", recording.getMaxSize());
+		status.put("file", entry.file.toString());
+		status.put("fileSize", Files.isRegularFile(entry.file) ? entry.file.toFile().length() : 0);
+		return status;
+	}
+
+	private void watch(Entry entry, BooleanSupplier stopCondition) {
+		executor.schedule(() -> {
+			synchronized (this) {
+				if (entry.recording.getState() != RecordingState.RUNNING) {
+					return;
+				}
+				if (stopCondition.getAsBoolean()) {
+					stop(entry);
+					return;
+				}
+			}
+			watch(entry, stopCondition);
+		}, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Closes and forgets the oldest finished recordings (the files are kept)
+	 */
+	private void removeOldRecordings() {
+		for (Iterator<Entry> it = recordings.values().iterator(); it.hasNext() && recordings.size() > MAX_RETAINED;) {
+			Entry entry = it.next();
+			if (entry.recording.getState() != RecordingState.RUNNING && entry.recording.getState() != RecordingState.DELAYED) {
+				entry.recording.close();
+				it.remove();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.thabok.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Custom Java Flight Recorder events of the planner and the WebUntis requests. They only cost something
+ * while a recording with these events is running (see {@link FlightRecordings}), e.g. started with
+ * POST /admin/recordings or jcmd JFR.start.
+ * @author thabok
+ */
+public class JfrEvents {
+
+	private static final String CATEGORY = "My Car Time";
+
+	private JfrEvents() {
+	}
+
+	@Name("com.thabok.PlanSearch")
+	@Label("Plan Search")
+	@Description("Search for the best plan (from the first candidate until the search ends or is cancelled)")
+	@Category({ CATEGORY, "Planner" })
+	@StackTrace(false)
+	public static class SearchEvent extends Event {
+		@Label("Persons")
+		public int persons;
+		@Label("Candidates")
+		public int candidates;
+		@Label("Improvements")
+		public int improvements;
+		@Label("Cancelled")
+		public boolean cancelled;
+	}
+
+	@Name("com.thabok.PlanImprovement")
+	@Label("Plan Improvement")
+	@Description("A better plan was found during the search")
+	@Category({ CATEGORY, "Planner" })
+	@StackTrace(false)
+	public static class ImprovementEvent extends Event {
+		@Label("Candidate")
+		public int candidate;
+		@Label("Persons With More Than Four Drives")
+		public int personsWithMoreThanFourDrives;
+		@Label("Persons With More Than Five Drives")
+		public int personsWithMoreThanFiveDrives;
+		@Label("Involuntary Drives")
+		public int involuntaryDrives;
+	}
+
+	@Name("com.thabok.PlannerPhase")
+	@Label("Planner Phase")
+	@Description("A phase of a plan calculation (fetching, searching, verifying) or of calculateWeekPlan (per candidate)")
+	@Category({ CATEGORY, "Planner" })
+	@StackTrace(false)
+	public static class PhaseEvent extends Event {
+		@Label("Phase")
+		public String phase;
+		@Label("Candidate")
+		@Description("Number of the candidate (calculateWeekPlan phases) or -1")
+		public int candidate;
+	}
+
+	@Name("com.thabok.TimetableFetch")
+	@Label("Timetable Fetch")
+	@Description("Timetable of a person (A and B week), fetched from WebUntis or the cache as part of a batch")
+	@Category({ CATEGORY, "WebUntis" })
+	@StackTrace(false)
+	public static class TimetableFetchEvent extends Event {
+		@Label("Initials")
+		public String initials;
+		@Label("Batch Size")
+		public int batchSize;
+		@Label("Success")
+		public boolean success;
+	}
+
+}
@@ -1,13 +1,25 @@
 package com.thabok.util;
 
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.thabok.entities.MasterPlan;
 
+import spark.Request;
+import spark.Response;
 import spark.ResponseTransformer;
 
 /**
@@ -15,6 +27,8 @@ import spark.ResponseTransformer;
  */
 public class JsonUtil {
 
+	private static final int BUFFER_SIZE = 8192;
+
 	private static Gson g = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss'+0200'").create();
     /**
      * 
@@ -27,6 +41,102 @@ public class JsonUtil {
     	return g.toJson(object).replace("\\\"", "'");
     }
 
+    /**
+     * 
+     * Serializes the object into json directly to the response (no intermediate String). The response is
+     * gzip-compressed if the client accepts it. Escaped quotes are replaced while writing, the result is the
+     * same as with {@link #toJson(Object)}.
+     *
+     * @param req the request (Accept-Encoding header)
+     * @param res the response to write to
+     * @param object the object to serialize
+     * @return an empty body (everything has been written already)
+     * @throws IOException if the response cannot be written
+     */
+    public static Object writeJson(Request req, Response res, Object object) throws IOException {
+    	HttpServletResponse raw = res.raw();
+    	raw.setContentType("application/json;charset=utf-8");
+    	OutputStream out = raw.getOutputStream();
+    	String acceptEncoding = req.headers("Accept-Encoding");
+    	if (acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+    		raw.setHeader("Content-Encoding", "gzip");
+    		out = new GZIPOutputStream(out, BUFFER_SIZE);
+    	}
+    	try (Writer writer = new QuoteReplacingWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+    		g.toJson(object, writer);
+    	}
+    	return "";
+    }
+
+    /**
+     * Replaces escaped quotes (backslash + quote) with a single quote while writing. Works like
+     * String.replace (left to right, non-overlapping), so an escaped backslash followed by an escaped
+     * quote becomes backslash, backslash, single quote.
+     */
+    private static class QuoteReplacingWriter extends FilterWriter {
+
+    	private boolean pendingBackslash;
+
+    	QuoteReplacingWriter(Writer out) {
+    		super(out);
+    	}
+
+    	@Override
+    	public void write(int c) throws IOException {
+    		if (pendingBackslash) {
+    			pendingBackslash = false;
+    			if (c == '"') {
+    				out.write('\'');
+    				return;
+    			}
+    			out.write('\\');
+    		}
+    		if (c == '\\') {
+    			pendingBackslash = true;
+    		} else {
+    			out.write(c);
+    		}
+    	}
+
+    	@Override
+    	public void write(char[] cbuf, int off, int len) throws IOException {
+    		int start = off;
+    		int end = off + len;
+    		for (int i = off; i < end; i++) {
+    			if (pendingBackslash || cbuf[i] == '\\') {
+    				// copy everything before this char, handle the backslash sequence char by char
+    				out.write(cbuf, start, i - start);
+    				write(cbuf[i]);
+    				start = i + 1;
+    			}
+    		}
+    		out.write(cbuf, start, end - start);
+    	}
+
+    	@Override
+    	public void write(String str, int off, int len) throws IOException {
+    		int start = off;
+    		int end = off + len;
+    		for (int i = off; i < end; i++) {
+    			if (pendingBackslash || str.charAt(i) == '\\') {
+    				out.write(str, start, i - start);
+    				write(str.charAt(i));
+    				start = i + 1;
+    			}
+    		}
+    		out.write(str, start, end - start);
+    	}
+
+    	@Override
+    	public void close() throws IOException {
+    		if (pendingBackslash) {
+    			pendingBackslash = false;
+    			out.write('\\');
+    		}
+    		super.close();
+    	}
+    }
+
     /**
      * 
      * A helper method to serialize objects into json.
@@ -67,11 +177,21 @@ public class JsonUtil {
      * @return the transformed response
      */
     public static ResponseTransformer strippedDrivingPlan() {
-        return (obj -> {
-        	((MasterPlan)obj).inputsPerDay = null;
-        	((MasterPlan)obj).persons = null;
-        	return JsonUtil.toJson(obj);	
-        });
+        return (obj -> JsonUtil.toJson(stripDrivingPlan(obj)));
+    }
+
+    /**
+     * Removes the planning inputs from a driving plan (not needed by the client).
+     *
+     * @param obj the object to serialize (only driving plans are changed)
+     * @return the object
+     */
+    public static Object stripDrivingPlan(Object obj) {
+    	if (obj instanceof MasterPlan) {
+    		((MasterPlan)obj).inputsPerDay = null;
+    		((MasterPlan)obj).persons = null;
+    	}
+    	return obj;
     }
 
     public static ResponseTransformer html() {
@@ -0,0 +1,271 @@
+package com.thabok.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registry for the metrics of the backend, exported in the Prometheus text format (GET /metrics).
+ * <br><br>
+ * Counters and histograms are updated by the planner and the WebUntis requests, so they only use
+ * LongAdder/DoubleAdder (no locks, no contention between the threads). Values that are already
+ * tracked elsewhere (cache statistics, active jobs, JVM figures) are registered as functions and
+ * read when the metrics are scraped.
+ * @author thabok
+ */
+public class Metrics {
+
+	/**
+	 * Buckets (seconds) for durations between a few microseconds (planning phases) and a minute (searches, requests)
+	 */
+	public static final double[] DURATION_BUCKETS = { 0.00001, 0.0001, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+	private static final Map<String, Family> families = new LinkedHashMap<>();
+
+	static {
+		registerJvmMetrics();
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the counter with the given name and labels (registered on the first call).
+	 *
+	 * @param name the metric name (e.g. webuntis_request_errors_total)
+	 * @param help the description
+	 * @param labels label names and values (name1, value1, name2, value2, ...)
+	 */
+	public static Counter counter(String name, String help, String... labels) {
+		return (Counter) register(name, help, "counter", labels, () -> new Counter());
+	}
+
+	/**
+	 * Returns the histogram with the given name and labels (registered on the first call).
+	 *
+	 * @param buckets the upper bounds of the buckets (ascending, +Inf is added)
+	 */
+	public static Histogram histogram(String name, String help, double[] buckets, String... labels) {
+		return (Histogram) register(name, help, "histogram", labels, () -> new Histogram(buckets));
+	}
+
+	/**
+	 * Registers a gauge whose value is read when the metrics are scraped.
+	 */
+	public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+		register(name, help, "gauge", labels, () -> new FunctionMetric(value));
+	}
+
+	/**
+	 * Registers a counter whose value is tracked elsewhere and read when the metrics are scraped.
+	 */
+	public static void counterFunction(String name, String help, DoubleSupplier value, String... labels) {
+		register(name, help, "counter", labels, () -> new FunctionMetric(value));
+	}
+
+	private static synchronized Metric register(String name, String help, String type, String[] labels, Supplier<Metric> factory) {
+		if (labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Every label must have a value: " + name);
+		}
+		Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+		if (!family.type.equals(type)) {
+			throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+		}
+		return family.metrics.computeIfAbsent(formatLabels(labels), l -> factory.get());
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format (version 0.0.4)
+	 */
+	public static String scrape() {
+		List<Map.Entry<String, Family>> entries;
+		synchronized (Metrics.class) {
+			entries = new ArrayList<>();
+			for (Map.Entry<String, Family> entry : families.entrySet()) {
+				Family family = entry.getValue();
+				Family copy = new Family(family.help, family.type);
+				copy.metrics.putAll(family.metrics);
+				entries.add(Map.entry(entry.getKey(), copy));
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Family> entry : entries) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			sb.append("# HELP ").append(name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			sb.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+			for (Map.Entry<String, Metric> metric : family.metrics.entrySet()) {
+				metric.getValue().write(sb, name, metric.getKey());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the labels in the exposition format ({name="value",...}) or an empty string
+	 */
+	private static String formatLabels(String... labels) {
+		if (labels.length == 0) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < labels.length; i += 2) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[i]).append("=\"").append(escapeLabelValue(labels[i + 1])).append('"');
+		}
+		return sb.append('}').toString();
+	}
+
+	private static String escapeLabelValue(String value) {
+		return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Adds a label to the formatted labels of a metric (e.g. le for the histogram buckets)
+	 */
+	private static String addLabel(String labels, String name, String value) {
+		String label = name + "=\"" + value + "\"";
+		return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+	}
+
+	private static String formatValue(double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		}
+		if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		// no exponent notation (e.g. 0.00001 instead of 1.0E-5)
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+
+	private static void registerJvmMetrics() {
+		gauge("jvm_memory_heap_used_bytes", "Used heap memory", () -> heapUsage().getUsed());
+		gauge("jvm_memory_heap_committed_bytes", "Committed heap memory", () -> heapUsage().getCommitted());
+		gauge("jvm_memory_heap_max_bytes", "Max. heap memory (-1 if undefined)", () -> heapUsage().getMax());
+		gauge("jvm_threads_live", "Number of live threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			counterFunction("jvm_gc_collections_total", "Number of garbage collections", gc::getCollectionCount, "gc", gc.getName());
+			counterFunction("jvm_gc_collection_seconds_total", "Time spent in garbage collections", () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+		}
+	}
+
+	private static MemoryUsage heapUsage() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+	}
+
+	private static class Family {
+		final String help;
+		final String type;
+		final Map<String, Metric> metrics = new LinkedHashMap<>();
+
+		Family(String help, String type) {
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+	private interface Metric {
+		void write(StringBuilder sb, String name, String labels);
+	}
+
+	public static class Counter implements Metric {
+
+		private final LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, String labels) {
+			sb.append(name).append(labels).append(' ').append(value.sum()).append('\n');
+		}
+	}
+
+	public static class Histogram implements Metric {
+
+		private final double[] buckets;
+		private final LongAdder[] counts;
+		private final DoubleAdder sum = new DoubleAdder();
+
+		Histogram(double[] buckets) {
+			this.buckets = buckets.clone();
+			Arrays.sort(this.buckets);
+			// last count: +Inf
+			this.counts = new LongAdder[this.buckets.length + 1];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = new LongAdder();
+			}
+		}
+
+		public void observe(double value) {
+			int index = Arrays.binarySearch(buckets, value);
+			counts[index >= 0 ? index : -index - 1].increment();
+			sum.add(value);
+		}
+
+		/**
+		 * Records a duration that was measured with System.nanoTime() (in seconds)
+		 */
+		public void observeNanos(long nanos) {
+			observe(nanos / 1e9);
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, String labels) {
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i].sum();
+				String le = i < buckets.length ? formatValue(buckets[i]) : "+Inf";
+				sb.append(name).append("_bucket").append(addLabel(labels, "le", le)).append(' ').append(cumulative).append('\n');
+			}
+			sb.append(name).append("_sum").append(labels).append(' ').append(formatValue(sum.sum())).append('\n');
+			sb.append(name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+		}
+	}
+
+	private static class FunctionMetric implements Metric {
+
+		private final DoubleSupplier value;
+
+		FunctionMetric(DoubleSupplier value) {
+			this.value = value;
+		}
+
+		@Override
+		public void write(StringBuilder sb, String name, String labels) {
+			double current;
+			try {
+				current = value.getAsDouble();
+			} catch (RuntimeException e) {
+				current = Double.NaN;
+			}
+			sb.append(name).append(labels).append(' ').append(formatValue(current)).append('\n');
+		}
+	}
+
+}
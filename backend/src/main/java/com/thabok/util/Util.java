@@ -38,7 +38,7 @@ public class Util {
 	
 	public static final List<DayOfWeek> weekdays = Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY);
 
-	public static List<DayOfWeekABCombo> weekdayListAB = Arrays.asList(
+	private static final List<DayOfWeekABCombo> DEFAULT_WEEKDAY_LIST_AB = Arrays.asList(
 			new DayOfWeekABCombo(DayOfWeek.MONDAY, true),
 			new DayOfWeekABCombo(DayOfWeek.TUESDAY, true),
 			new DayOfWeekABCombo(DayOfWeek.WEDNESDAY, true),
@@ -51,7 +51,35 @@ public class Util {
 			new DayOfWeekABCombo(DayOfWeek.FRIDAY, false)
 		);
 
-	public static PrintStream out;
+	/**
+	 * The days in the order of the current plan (shuffled for each plan candidate). Like {@link #out()}, the list
+	 * is confined to the calculating thread, so several plans can be calculated at the same time.
+	 */
+	private static final ThreadLocal<List<DayOfWeekABCombo>> weekdayListAB = ThreadLocal.withInitial(() -> new ArrayList<>(DEFAULT_WEEKDAY_LIST_AB));
+
+	private static final ThreadLocal<PrintStream> out = ThreadLocal.withInitial(() -> System.out);
+
+	/**
+	 * @return the days of the A and B week in the order of the plan that is calculated by the current thread
+	 */
+	public static List<DayOfWeekABCombo> getWeekdayListAB() {
+		return weekdayListAB.get();
+	}
+
+	public static void setWeekdayListAB(List<DayOfWeekABCombo> days) {
+		weekdayListAB.set(days);
+	}
+
+	/**
+	 * @return the stream for the detailed planning output of the current thread (discarded for plan candidates)
+	 */
+	public static PrintStream out() {
+		return out.get();
+	}
+
+	public static void setOut(PrintStream printStream) {
+		out.set(printStream);
+	}
 
 	
 	/**
@@ -67,7 +95,45 @@ public class Util {
 		String calculatedDateString = dtf.format(calculatedDate);
 		return Integer.parseInt(calculatedDateString);
 	}
-	
+
+	/**
+	 * Reads an integer value from the system properties (e.g. -Dwebuntis.concurrency=8).
+	 * @param key the name of the system property
+	 * @param defaultValue the value to use if the property is missing or invalid
+	 * @return the configured value or the default value
+	 */
+	public static int getIntProperty(String key, int defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + key + ": " + value + ". Falling back to default value " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Reads a decimal value from the system properties (e.g. -Dstandin.errorRate=0.05).
+	 * @param key the name of the system property
+	 * @param defaultValue the value to use if the property is missing or invalid
+	 * @return the configured value or the default value
+	 */
+	public static double getDoubleProperty(String key, double defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + key + ": " + value + ". Falling back to default value " + defaultValue);
+			return defaultValue;
+		}
+	}
+
 
 	public static Map<Integer, CustomDay> initializeEmptyCustomDays() {
 		Map<Integer, CustomDay> map = new HashMap<>();
@@ -162,7 +228,7 @@ public class Util {
 	}
 	
 	public static DayOfWeekABCombo getMirrorCombo(DayOfWeekABCombo combo) {
-		for (DayOfWeekABCombo c : weekdayListAB) {
+		for (DayOfWeekABCombo c : getWeekdayListAB()) {
 			if (c.getDayOfWeek().equals(combo.getDayOfWeek()) && c.isWeekA() != combo.isWeekA()) {
 				return c;
 			}
@@ -275,7 +341,7 @@ public class Util {
 			for (int i=0; i<(19 - person.firstName.length()); i++) {
 				spaces += " ";
 			}
-			out.println(String.format("|  %s: %s%s|", person, numberOfDrives.get(person), spaces));
+			out().println(String.format("|  %s: %s%s|", person, numberOfDrives.get(person), spaces));
 			PartyTuple pt = PartyHelper.getPartyTupleByDriver(theMasterPlan.getDayPlans().get(1), person);
 			boolean monA = pt != null;
 			boolean desigMonA = pt != null && pt.isDesignatedDriver();
@@ -306,10 +372,10 @@ public class Util {
 			pt = PartyHelper.getPartyTupleByDriver(theMasterPlan.getDayPlans().get(12), person);
 			boolean friB = pt != null;
 			boolean desigFriB = pt != null && pt.isDesignatedDriver();
-			out.println("| MON | TUE | WED | THU | FRI |");
-			out.println(String.format("|  %s  |  %s  |  %s  |  %s  |  %s  |", getAbMapMark(monA, desigMonA), getAbMapMark(tueA, desigTueA), getAbMapMark(wedA, desigWedA), getAbMapMark(thuA, desigThuA) ,getAbMapMark(friA, desigFriA)));
-			out.println(String.format("|  %s  |  %s  |  %s  |  %s  |  %s  |", getAbMapMark(monB, desigMonB), getAbMapMark(tueB, desigTueB), getAbMapMark(wedB, desigWedB), getAbMapMark(thuB, desigThuB) ,getAbMapMark(friB, desigFriB)));
-			out.println();
+			out().println("| MON | TUE | WED | THU | FRI |");
+			out().println(String.format("|  %s  |  %s  |  %s  |  %s  |  %s  |", getAbMapMark(monA, desigMonA), getAbMapMark(tueA, desigTueA), getAbMapMark(wedA, desigWedA), getAbMapMark(thuA, desigThuA) ,getAbMapMark(friA, desigFriA)));
+			out().println(String.format("|  %s  |  %s  |  %s  |  %s  |  %s  |", getAbMapMark(monB, desigMonB), getAbMapMark(tueB, desigTueB), getAbMapMark(wedB, desigWedB), getAbMapMark(thuB, desigThuB) ,getAbMapMark(friB, desigFriB)));
+			out().println();
 		}
 	}
 	
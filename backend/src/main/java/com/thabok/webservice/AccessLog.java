@@ -0,0 +1,295 @@
+package com.thabok.webservice;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.thabok.util.Metrics;
+import com.thabok.util.Util;
+
+import spark.Request;
+import spark.Response;
+
+/**
+ * Structured access log (one JSON object per line) that is written by a background thread. The request thread
+ * only collects a few fields and puts them into a bounded queue; if the queue is full the entry is dropped
+ * (counted in access_log_dropped_total). Request bodies are not logged by default. If enabled, only small
+ * bodies that the route read with {@link #readBody(Request)} are logged, truncated and with redacted fields.
+ * <br><br>
+ * The following system properties can be used for configuration:
+ * <ul>
+ * <li>accesslog.enabled: log requests at all (default: true)</li>
+ * <li>accesslog.file: file the log is appended to (default: none, standard output)</li>
+ * <li>accesslog.queueSize: max. number of entries that wait to be written (default: 1000)</li>
+ * <li>accesslog.sampleRate: share of the successful requests that is logged (default: 1.0), errors and slow
+ * requests are always logged</li>
+ * <li>accesslog.slowMillis: requests that take at least this long are always logged (default: 1000)</li>
+ * <li>accesslog.exclude: comma separated path prefixes that are not logged (default: /progress,/metrics)</li>
+ * <li>accesslog.maxUrlChars: max. length of path and query (default: 256)</li>
+ * <li>accesslog.bodyChars: max. number of logged body characters (default: 0, no bodies)</li>
+ * <li>accesslog.maxBodyBytes: bodies with a greater (or unknown) Content-Length are never logged (default: 4096)</li>
+ * <li>accesslog.redact: comma separated names of query params and JSON fields whose values are replaced
+ * (default: hash,password,sessionToken,token)</li>
+ * </ul>
+ * @author thabok
+ */
+public class AccessLog {
+
+	private static final String START_ATTRIBUTE = "accessLog.start";
+	private static final String BODY_ATTRIBUTE = "accessLog.body";
+	private static final String REDACTED = "***";
+	private static final int MAX_BATCH = 100;
+	private static final Metrics.Counter written = Metrics.counter("access_log_entries_total", "Number of written access log entries");
+	private static final Metrics.Counter dropped = Metrics.counter("access_log_dropped_total", "Number of access log entries that were dropped because the queue was full");
+
+	private final boolean enabled;
+	private final double sampleRate;
+	private final long slowMillis;
+	private final List<String> excludedPaths;
+	private final int maxUrlChars;
+	private final int bodyChars;
+	private final long maxBodyBytes;
+	private final Set<String> redactedFields;
+	private final Pattern redactedJsonFields;
+	private final BlockingQueue<Entry> queue;
+	private final Writer writer;
+	private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+	/**
+	 * The raw values of a request, formatted by the background thread
+	 */
+	private static class Entry {
+		long timestamp;
+		String method;
+		String path;
+		String query;
+		int status;
+		long durationMicros;
+		long requestBytes;
+		String ip;
+		String session;
+		String body;
+	}
+
+	public AccessLog(boolean enabled, String file, int queueSize, double sampleRate, long slowMillis, List<String> excludedPaths,
+			int maxUrlChars, int bodyChars, long maxBodyBytes, List<String> redactedFields) {
+		this.enabled = enabled;
+		this.sampleRate = sampleRate;
+		this.slowMillis = slowMillis;
+		this.excludedPaths = excludedPaths;
+		this.maxUrlChars = Math.max(16, maxUrlChars);
+		this.bodyChars = Math.max(0, bodyChars);
+		this.maxBodyBytes = maxBodyBytes;
+		this.redactedFields = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		this.redactedFields.addAll(redactedFields);
+		this.redactedJsonFields = redactedFields.isEmpty() ? null
+				: Pattern.compile("\"(" + String.join("|", redactedFields.stream().map(Pattern::quote).toArray(String[]::new))
+						+ ")\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\"?|[^,}\\]\\s]*)", Pattern.CASE_INSENSITIVE);
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+		this.writer = createWriter(file);
+		if (enabled) {
+			Thread thread = new Thread(this::writeEntries, "access-log");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.start();
+		}
+	}
+
+	public static AccessLog fromSystemProperties() {
+		return new AccessLog(Boolean.parseBoolean(System.getProperty("accesslog.enabled", "true")),
+				System.getProperty("accesslog.file"),
+				Util.getIntProperty("accesslog.queueSize", 1000),
+				Util.getDoubleProperty("accesslog.sampleRate", 1.0),
+				Util.getIntProperty("accesslog.slowMillis", 1000),
+				split(System.getProperty("accesslog.exclude", "/progress,/metrics")),
+				Util.getIntProperty("accesslog.maxUrlChars", 256),
+				Util.getIntProperty("accesslog.bodyChars", 0),
+				Util.getIntProperty("accesslog.maxBodyBytes", 4096),
+				split(System.getProperty("accesslog.redact", "hash,password,sessionToken,token")));
+	}
+
+	/**
+	 * Registers the filters that measure and log every request. Should be called once, before the routes are defined.
+	 */
+	public void register() {
+		if (!enabled) {
+			return;
+		}
+		spark.Spark.before((req, res) -> req.attribute(START_ATTRIBUTE, System.nanoTime()));
+		// runs after the response is complete, also after halt() and exception handlers
+		spark.Spark.afterAfter((req, res) -> log(req, res));
+	}
+
+	/**
+	 * Reads the body of the request and keeps it for the access log. Routes use this instead of req.body(),
+	 * the log never reads a body itself.
+	 */
+	public static String readBody(Request req) {
+		String body = req.body();
+		req.attribute(BODY_ATTRIBUTE, body);
+		return body;
+	}
+
+	/**
+	 * Collects the values of the request and queues them. Never blocks and never reads a body that wasn't read already.
+	 */
+	private void log(Request req, Response res) {
+		try {
+			String path = req.pathInfo();
+			if (path == null || isExcluded(path)) {
+				return;
+			}
+			Long start = req.attribute(START_ATTRIBUTE);
+			long durationMicros = start != null ? (System.nanoTime() - start) / 1000 : -1;
+			int status = res.raw().getStatus();
+			boolean alwaysLogged = status >= 400 || durationMicros >= slowMillis * 1000;
+			if (!alwaysLogged && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+				return;
+			}
+			Entry entry = new Entry();
+			entry.timestamp = System.currentTimeMillis();
+			entry.method = req.requestMethod();
+			entry.path = path;
+			entry.query = req.queryString();
+			entry.status = status;
+			entry.durationMicros = durationMicros;
+			entry.requestBytes = req.contentLength();
+			entry.ip = req.ip();
+			entry.session = req.headers(WebService.SESSION_TOKEN_HEADER);
+			if (bodyChars > 0 && entry.requestBytes > 0 && entry.requestBytes <= maxBodyBytes) {
+				// small and already read by the route (null otherwise)
+				entry.body = req.attribute(BODY_ATTRIBUTE);
+			}
+			if (!queue.offer(entry)) {
+				dropped.increment();
+			}
+		} catch (Exception e) {
+			System.err.println("Couldn't log request. " + e.toString());
+		}
+	}
+
+	private boolean isExcluded(String path) {
+		for (String excludedPath : excludedPaths) {
+			if (path.startsWith(excludedPath)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeEntries() {
+		List<Entry> batch = new ArrayList<>(MAX_BATCH);
+		while (true) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH - 1);
+				for (Entry entry : batch) {
+					writer.write(format(entry));
+					writer.write(System.lineSeparator());
+				}
+				writer.flush();
+				written.add(batch.size());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				System.err.println("Couldn't write access log. " + e.toString());
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private String format(Entry entry) {
+		Map<String, Object> line = new LinkedHashMap<>();
+		line.put("time", Instant.ofEpochMilli(entry.timestamp).toString());
+		line.put("method", entry.method);
+		line.put("path", truncate(entry.path, maxUrlChars));
+		if (entry.query != null) {
+			line.put("query", truncate(redactQuery(entry.query), maxUrlChars));
+		}
+		line.put("status", entry.status);
+		line.put("durationMs", entry.durationMicros / 1000.0);
+		line.put("requestBytes", entry.requestBytes);
+		line.put("ip", entry.ip);
+		if (entry.session != null) {
+			line.put("session", shorten(entry.session));
+		}
+		if (entry.body != null) {
+			line.put("body", truncate(redactJson(entry.body), bodyChars));
+		}
+		return gson.toJson(line);
+	}
+
+	private String redactQuery(String query) {
+		StringBuilder sb = new StringBuilder(query.length());
+		for (String param : query.split("&")) {
+			if (sb.length() > 0) {
+				sb.append('&');
+			}
+			int eq = param.indexOf('=');
+			if (eq > 0 && redactedFields.contains(param.substring(0, eq))) {
+				sb.append(param, 0, eq + 1).append(REDACTED);
+			} else {
+				sb.append(param);
+			}
+		}
+		return sb.toString();
+	}
+
+	private String redactJson(String json) {
+		if (redactedJsonFields == null) {
+			return json;
+		}
+		Matcher matcher = redactedJsonFields.matcher(json);
+		return matcher.replaceAll(match -> Matcher.quoteReplacement("\"" + match.group(1) + "\":\"" + REDACTED + "\""));
+	}
+
+	/**
+	 * Session tokens are secrets, only their beginning is logged
+	 */
+	private static String shorten(String token) {
+		return token.length() <= 8 ? token : token.substring(0, 8) + "...";
+	}
+
+	private static String truncate(String value, int maxChars) {
+		if (value.length() <= maxChars) {
+			return value;
+		}
+		return value.substring(0, maxChars) + "...(" + value.length() + " chars)";
+	}
+
+	private static List<String> split(String value) {
+		List<String> values = new ArrayList<>();
+		Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).forEach(values::add);
+		return values;
+	}
+
+	private static Writer createWriter(String file) {
+		if (file != null && !file.isEmpty()) {
+			try {
+				return new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+			} catch (Exception e) {
+				System.err.println("Couldn't open access log file " + file + ", using standard output. " + e.toString());
+			}
+		}
+		return new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+	}
+
+}
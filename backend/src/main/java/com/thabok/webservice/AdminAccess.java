@@ -0,0 +1,77 @@
+package com.thabok.webservice;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import spark.Request;
+import spark.Spark;
+
+/**
+ * Guards the admin routes (/admin/...), e.g. the flight recordings and the session statistics, as well as the
+ * operational routes that expose or change server-wide state (metrics and caches). If an admin token
+ * is configured, the requests must send it in the header X-Admin-Token. Without a token, only requests from the
+ * local machine are accepted (note: behind a reverse proxy on the same machine, every request is local, so a
+ * token should be configured).
+ * <br><br>
+ * Configuration (system properties):
+ * <ul>
+ * <li>admin.token: the token that is expected in the header X-Admin-Token (default: none, local requests only)</li>
+ * </ul>
+ * @author thabok
+ */
+public class AdminAccess {
+
+	public static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+	public static final String ADMIN_PATH = "/admin/*";
+
+	/**
+	 * The guarded paths: the admin routes, the Prometheus metrics and the timetable / plan caches
+	 */
+	private static final String[] GUARDED_PATHS = { ADMIN_PATH, "/metrics", "/cache", "/cache/*", "/plans/cache" };
+
+	private final byte[] token;
+
+	/**
+	 * @param token the admin token or null / empty for local requests only
+	 */
+	public AdminAccess(String token) {
+		this.token = token != null && !token.isBlank() ? token.getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	public static AdminAccess fromSystemProperties() {
+		return new AdminAccess(System.getProperty("admin.token"));
+	}
+
+	/**
+	 * Registers the filters that reject unauthorized requests to the guarded routes (401 for a missing or wrong
+	 * token, 403 for remote requests if no token is configured). Should be called once, before the routes are defined.
+	 */
+	public void register() {
+		for (String path : GUARDED_PATHS) {
+			Spark.before(path, (req, res) -> {
+				if ("OPTIONS".equals(req.requestMethod())) {
+					// CORS preflight, answered by the options route
+					return;
+				}
+				if (token != null) {
+					if (!isValidToken(req.headers(ADMIN_TOKEN_HEADER))) {
+						Spark.halt(401, "Admin token missing or invalid.");
+					}
+				} else if (!isLocal(req)) {
+					Spark.halt(403, "Admin routes are only available locally (or with the system property admin.token).");
+				}
+			});
+		}
+	}
+
+	boolean isValidToken(String requestToken) {
+		// constant time comparison: the response time doesn't reveal the token
+		return token != null && requestToken != null && MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static boolean isLocal(Request req) {
+		String ip = req.raw().getRemoteAddr();
+		return "127.0.0.1".equals(ip) || "0:0:0:0:0:0:0:1".equals(ip) || "::1".equals(ip);
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.thabok.webservice;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.Gson;
+import com.thabok.entities.ProgressObject;
+import com.thabok.main.ProgressPublisher;
+import com.thabok.util.Util;
+
+import spark.Response;
+
+/**
+ * Pushes the progress of a calculation to the client as server-sent events (content type text/event-stream),
+ * so the client doesn't have to poll. Each update is sent as an event "progress" with the progress object as
+ * json data. Updates are throttled: if several updates are published within the min. interval (system property
+ * progress.streamIntervalMs, default: 250), only the latest one is sent.
+ * <br><br>
+ * Without updates, a heartbeat comment is sent every progress.heartbeatMs (default: 5000) milliseconds. It keeps
+ * the connection alive, and a failed heartbeat (the client is gone) ends the stream. A stream ends after
+ * progress.streamMaxSeconds (default: 900) even if the calculation is still running, so that no request
+ * thread is blocked forever. The client can reconnect or poll the progress.
+ * @author thabok
+ */
+public class ProgressEventStream {
+
+	private static final long HEARTBEAT_MS = Math.max(100, Util.getIntProperty("progress.heartbeatMs", 5000));
+	private static final long MIN_INTERVAL_MS = Util.getIntProperty("progress.streamIntervalMs", 250);
+	private static final long MAX_LIFETIME_MS = Math.max(1, Util.getIntProperty("progress.streamMaxSeconds", 900)) * 1000L;
+	private static final int RETRY_MS = 2000;
+
+	/**
+	 * Streams the progress until the calculation is finished (event "done"), the client disconnects or the max.
+	 * lifetime of the stream is reached (event "timeout"). Blocks the calling (request) thread while streaming.
+	 *
+	 * @param res the response to stream to
+	 * @param publisher provides the progress updates
+	 * @param isFinished true if no more updates will follow (checked after each update and before each heartbeat)
+	 * @return an empty body (everything has been written already)
+	 */
+	public static Object stream(Response res, ProgressPublisher publisher, BooleanSupplier isFinished) {
+		HttpServletResponse raw = res.raw();
+		raw.setStatus(200);
+		raw.setContentType("text/event-stream");
+		raw.setCharacterEncoding("UTF-8");
+		raw.setHeader("Cache-Control", "no-cache");
+		raw.setHeader("X-Accel-Buffering", "no");
+		Gson gson = new Gson();
+		try {
+			Writer writer = new OutputStreamWriter(raw.getOutputStream(), StandardCharsets.UTF_8);
+			writer.write("retry: " + RETRY_MS + "\n\n");
+			writer.flush();
+			long deadline = System.currentTimeMillis() + MAX_LIFETIME_MS;
+			long sequence = -1;
+			while (true) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					writer.write("event: timeout\ndata: {}\n\n");
+					writer.flush();
+					break;
+				}
+				ProgressObject progress = publisher.awaitUpdate(sequence, Math.min(HEARTBEAT_MS, remaining));
+				if (progress.sequence == sequence) {
+					if (isFinished.getAsBoolean()) {
+						writer.write("event: done\ndata: {}\n\n");
+						writer.flush();
+						break;
+					}
+					// heartbeat: fails with an IOException if the client has disconnected
+					writer.write(": heartbeat\n\n");
+					writer.flush();
+					raw.flushBuffer();
+					continue;
+				}
+				sequence = progress.sequence;
+				writer.write("event: progress\nid: " + sequence + "\ndata: " + gson.toJson(progress) + "\n\n");
+				writer.flush();
+				if (isFinished.getAsBoolean()) {
+					writer.write("event: done\ndata: {}\n\n");
+					writer.flush();
+					break;
+				}
+				Thread.sleep(MIN_INTERVAL_MS);
+			}
+		} catch (IOException e) {
+			// the client closed the connection
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return "";
+	}
+
+}
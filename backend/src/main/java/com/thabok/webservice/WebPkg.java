@@ -5,5 +5,6 @@ public class WebPkg {
 	public String topic;
 	public String message;
 	public Object value;
+	public String token;
 	
 }
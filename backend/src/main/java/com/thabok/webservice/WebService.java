@@ -1,35 +1,37 @@
 package com.thabok.webservice;
 
 import static spark.Spark.before;
+import static spark.Spark.exception;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.options;
 import static spark.Spark.port;
 import static spark.Spark.post;
 
 import java.nio.file.Files;
-import java.util.Collections;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.codec.binary.Base64;
 
 import com.google.gson.Gson;
-import com.thabok.entities.CustomDay;
-import com.thabok.entities.DayPlan;
 import com.thabok.entities.MasterPlan;
-import com.thabok.entities.NumberOfDrivesStatus;
-import com.thabok.entities.PartyTuple;
-import com.thabok.entities.Person;
 import com.thabok.entities.PlanInputData;
 import com.thabok.entities.ProgressObject;
-import com.thabok.entities.TimingInfo;
-import com.thabok.helper.PlanOptimizationHelper;
-import com.thabok.helper.TimetableHelper;
-import com.thabok.main.Controller;
-import com.thabok.untis.Period;
+import com.thabok.main.PlanCalculator;
+import com.thabok.main.PlanJob;
+import com.thabok.main.PlanJobManager;
+import com.thabok.main.PlanScheduler;
+import com.thabok.main.ProgressPublisher;
 import com.thabok.untis.WebUntisAdapter;
+import com.thabok.untis.WebUntisSession;
+import com.thabok.util.FlightRecordings;
 import com.thabok.util.JsonUtil;
+import com.thabok.util.Metrics;
 import com.thabok.util.Util;
 
 import spark.Request;
@@ -38,28 +40,179 @@ import spark.Response;
 
 public class WebService {
 
-	private static ProgressObject progress = new ProgressObject();
-	public static boolean isCancelled;
+	/**
+	 * Header (or query param "sessionToken", e.g. for EventSource) with the token that is returned by the login
+	 */
+	public static final String SESSION_TOKEN_HEADER = "X-Session-Token";
+	private static final long CALCULATION_POLL_INTERVAL_MS = 250;
+
+	/**
+	 * Progress and cancellation flag of the blocking calculation (POST /calculatePlan) per session token
+	 */
+	private static final Map<String, Calculation> calculations = new ConcurrentHashMap<>();
+	private final PlanScheduler planScheduler = PlanScheduler.fromSystemProperties();
+	private final PlanJobManager jobManager = PlanJobManager.fromSystemProperties(planScheduler::getPrecomputedPlan);
+	private final FlightRecordings flightRecordings = FlightRecordings.fromSystemProperties();
+	private final AccessLog accessLog = AccessLog.fromSystemProperties();
+	private final AdminAccess adminAccess = AdminAccess.fromSystemProperties();
 
 	public WebService() {
 		port(getPort(1337));
+		accessLog.register();
+		adminAccess.register();
 		enableCORS("*");
-		before((req, res) -> logIncomingRequest(req));
 		get("/check", (req, res) -> true, JsonUtil.json());
 		post("/checkConnection", (req, res) -> checkConnection(req, res), JsonUtil.json());
 		post("/login", (req, res) -> login(req, res), JsonUtil.json());
-		post("/calculatePlan", (req, res) -> calculatePlan(req, res), JsonUtil.strippedDrivingPlan());
+		post("/calculatePlan", (req, res) -> JsonUtil.writeJson(req, res, JsonUtil.stripDrivingPlan(calculatePlan(req, res))));
 		post("/cancel", (req, res) -> cancel(req, res), JsonUtil.json());
 		get("/progress", (req, res) -> getProgress(req, res), JsonUtil.json());
+		get("/progress/stream", (req, res) -> streamProgress(req, res));
 		post("/logout", (req, res) -> logout(req, res), JsonUtil.json());
+		post("/jobs", (req, res) -> submitJob(req, res), JsonUtil.json());
+		get("/jobs", (req, res) -> jobManager.getStatus(getSession(req).getToken()), JsonUtil.json());
+		get("/jobs/:id", (req, res) -> jobManager.getStatus(getJob(req, res)), JsonUtil.json());
+		get("/jobs/:id/progress", (req, res) -> getJob(req, res).getProgress(), JsonUtil.json());
+		get("/jobs/:id/progress/stream", (req, res) -> streamJobProgress(req, res));
+		post("/jobs/:id/cancel", (req, res) -> cancelJob(req, res), JsonUtil.json());
+		get("/jobs/:id/result", (req, res) -> JsonUtil.writeJson(req, res, JsonUtil.stripDrivingPlan(getJobResult(req, res))));
+		get("/cache", (req, res) -> WebUntisAdapter.getCacheStats(), JsonUtil.json());
+		post("/cache/clear", (req, res) -> clearCache(req, res), JsonUtil.json());
+		get("/plans/cache", (req, res) -> PlanCalculator.getResultCacheStats(), JsonUtil.json());
+		get("/timetables/changes", (req, res) -> getTimetableChanges(req, res), JsonUtil.json());
+		get("/scheduler", (req, res) -> getSchedulerStatus(req, res), JsonUtil.json());
+		post("/scheduler/input", (req, res) -> saveSchedulerInput(req, res), JsonUtil.json());
+		get("/metrics", (req, res) -> getMetrics(req, res));
+		post("/admin/recordings", (req, res) -> startRecording(req, res), JsonUtil.json());
+		get("/admin/recordings", (req, res) -> flightRecordings.getStatus(), JsonUtil.json());
+		post("/admin/recordings/:id/stop", (req, res) -> stopRecording(req, res), JsonUtil.json());
+		get("/admin/sessions", (req, res) -> WebUntisAdapter.getSessionStats(), JsonUtil.json());
+		Metrics.gauge("plan_jobs_active", "Queued and running plan jobs", () -> jobManager.getActiveJobCount());
+		exception(RejectedExecutionException.class, (e, req, res) -> {
+			// planner busy: the client should try again later
+			res.status(503);
+			res.header("Retry-After", String.valueOf(jobManager.getRetryAfterSeconds()));
+			WebPkg pkg = new WebPkg();
+			pkg.topic = "jobs";
+			pkg.message = e.getMessage();
+			res.body(JsonUtil.toJson(pkg));
+		});
+		planScheduler.start();
+	}
+
+	/**
+	 * Removes cached timetables: all or only the ones of the teacher given by the query param "initials".
+	 * @return the number of removed weeks and the updated cache stats
+	 */
+	private Object clearCache(Request req, Response res) {
+		int removed = WebUntisAdapter.clearCache(req.queryParams("initials"));
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("removed", removed);
+		result.put("stats", WebUntisAdapter.getCacheStats());
+		return result;
+	}
+
+	/**
+	 * Lists the teachers whose timetable changed, optionally limited by the query params "scheduleReferenceStartDate"
+	 * (e.g. 20210830) and "since" (time in milliseconds, default: all recorded changes).
+	 */
+	private Object getTimetableChanges(Request req, Response res) {
+		// logged in users only (halts with 401)
+		getSession(req);
+		try {
+			int scheduleReferenceStartDate = Integer.parseInt(Objects.toString(req.queryParams("scheduleReferenceStartDate"), "0"));
+			long since = Long.parseLong(Objects.toString(req.queryParams("since"), "0"));
+			return WebUntisAdapter.getTimetableChanges(scheduleReferenceStartDate, since);
+		} catch (NumberFormatException e) {
+			res.status(400);
+			return "Invalid number: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * @return counters, histograms and gauges of the planner, the WebUntis requests, the caches and the JVM in the
+	 * Prometheus text format (see {@link Metrics})
+	 */
+	private Object getMetrics(Request req, Response res) {
+		res.type("text/plain; version=0.0.4; charset=utf-8");
+		return Metrics.scrape();
+	}
+
+	/**
+	 * Starts a flight recording (see {@link FlightRecordings}). Query params: "jobId" (optional, the recording
+	 * stops when the job is finished), "seconds" (max. duration, default: 300) and "sizeMb" (max. size, default: 100).
+	 */
+	private Object startRecording(Request req, Response res) {
+		String jobId = req.queryParams("jobId");
+		PlanJob job = null;
+		if (jobId != null) {
+			job = jobManager.get(jobId);
+			if (job == null) {
+				halt(404, "Unknown job: " + jobId);
+			}
+		}
+		WebPkg pkg = new WebPkg();
+		pkg.topic = "recordings";
+		try {
+			int seconds = Integer.parseInt(Objects.toString(req.queryParams("seconds"), "300"));
+			long sizeMb = Long.parseLong(Objects.toString(req.queryParams("sizeMb"), "100"));
+			PlanJob recordedJob = job;
+			pkg.value = flightRecordings.start(jobId, seconds, sizeMb, recordedJob != null ? recordedJob::isFinished : null);
+		} catch (NumberFormatException e) {
+			res.status(400);
+			pkg.message = "Invalid number: " + e.getMessage();
+		} catch (IllegalStateException e) {
+			res.status(409);
+			pkg.message = e.getMessage();
+		} catch (Exception e) {
+			res.status(500);
+			pkg.message = e.getMessage();
+		}
+		return pkg;
+	}
+
+	/**
+	 * Stops the flight recording given by the path param "id" and writes it to its file
+	 */
+	private Object stopRecording(Request req, Response res) {
+		Map<String, Object> status = null;
+		try {
+			status = flightRecordings.stop(Long.parseLong(req.params(":id")));
+		} catch (NumberFormatException e) {
+			// unknown recording
+		}
+		if (status == null) {
+			halt(404, "Unknown recording: " + req.params(":id"));
+		}
+		return status;
 	}
 
 	private Object getProgress(Request req, Response res) {
-		return progress;
+		return getCalculation(req).progress.getProgress();
+	}
+
+	/**
+	 * Streams the progress of the blocking calculation as server-sent events until it is finished: the running
+	 * calculation or, if none is running, the next one (see {@link ProgressEventStream})
+	 */
+	private Object streamProgress(Request req, Response res) {
+		Calculation calculation = getCalculation(req);
+		int generation = calculation.generation;
+		boolean wasRunning = calculation.running;
+		return ProgressEventStream.stream(res, calculation.progress,
+				() -> !calculation.running && (wasRunning || calculation.generation != generation));
+	}
+
+	/**
+	 * Streams the progress of the job as server-sent events until the job is finished (see {@link ProgressEventStream})
+	 */
+	private Object streamJobProgress(Request req, Response res) {
+		PlanJob job = getJob(req, res);
+		return ProgressEventStream.stream(res, job.getProgressPublisher(), job::isFinished);
 	}
 
 	private Object cancel(Request req, Response res) {
-		return isCancelled = true;
+		return getCalculation(req).cancelled = true;
 	}
 
 	private int getPort(int defaultPort) {
@@ -75,6 +228,10 @@ public class WebService {
 
 	/**
 	 * Main method to calculate a week plan for the carpool party.<br>
+	 * Blocks until the plan is calculated, progress and cancellation are shared by all callers with the same session
+	 * token (GET /progress, GET /progress/stream, POST /cancel). Use POST /jobs to calculate several plans at the same time.<br>
+	 * The calculation runs as a job on the planner workers (see {@link PlanJobManager}), the request thread only waits
+	 * for it. If the queue is full, the request is rejected with 503.<br>
 	 * IMPORTANT: user must be logged in to use this method!
 	 * @param req the incoming request
 	 * @param res the response
@@ -82,183 +239,141 @@ public class WebService {
 	 * @throws Exception things can go wrong...
 	 */
 	public Object calculatePlan(Request req, Response res) throws Exception {
-		isCancelled = false;
-		PlanInputData inputData = new Gson().fromJson(req.body(), PlanInputData.class);
-		List<Person> persons = inputData.persons;
-		Controller.referenceWeekStartDate = inputData.scheduleReferenceStartDate;
-		int personCount = 0;
-		for (Person person : persons) {
-			if (isCancelled) {
-				throw new CancellationException("The operation was cancelled by the user.");
+		Calculation calculation = getCalculation(req);
+		calculation.start();
+		PlanJob job = null;
+		try {
+			PlanInputData inputData = new Gson().fromJson(AccessLog.readBody(req), PlanInputData.class);
+			job = jobManager.submit(getSession(req), inputData);
+			long sequence = -1;
+			while (!job.isFinished()) {
+				if (calculation.cancelled) {
+					jobManager.cancel(job.getId());
+				}
+				ProgressObject progress = job.getProgressPublisher().awaitUpdate(sequence, CALCULATION_POLL_INTERVAL_MS);
+				sequence = progress.sequence;
+				if (job.getState() == PlanJob.State.QUEUED) {
+					int position = jobManager.getQueuePosition(job);
+					progress.message = "Waiting for a free planner (position " + position + ", about "
+							+ jobManager.getExpectedWaitSeconds(position) + " s)";
+				}
+				calculation.progress.update(progress);
 			}
-			personCount++;
-			String msg = "Fetching timetable for " + person.firstName + " " + person.lastName + " (" + person.initials + ")";
-			float progressValue = (((float)personCount) / persons.size()) * 0.5f;
-			WebService.updateProgress(progressValue, msg);
-			Map<Integer, Period> timetable = WebUntisAdapter.getTimetable(person.initials, inputData.scheduleReferenceStartDate);
-			person.schedule = TimetableHelper.timetableToSchedule(person, timetable);
+		} finally {
+			calculation.finish(job != null ? job.getProgress() : calculation.progress.getProgress());
 		}
-		
-		// at this point we should be at a progress value of 0.5 (50%)
-		Controller controller = new Controller();
-		MasterPlan mp;
-		if (inputData.preset == null) {
-			mp = findBestWeekPlan(controller, persons, 15000);
-			// calculate the winning plan once more (for debugging, tracability, etc.)
-			
-			MasterPlan mp2 = controller.calculateWeekPlan(mp);
-			if (!mp.toString().equals(mp2.toString())) {
-				throw new IllegalStateException("Traceability plan doesn't match originally calculated plan!");
-			}
-						
-		} else {
-//			mp = controller.adaptPreset(inputData.preset);
-			mp = controller.calculateWeekPlan(persons, inputData.preset);
+		if (job.getState() == PlanJob.State.FAILED) {
+			throw new Exception(job.getError());
 		}
-//		Util.writeStringToFile("/Users/thabok/Downloads/plan_" + System.currentTimeMillis() + ".txt", mp);
-		
-		storePersonsTimesPerDayPlan(mp);
-		// impact analysis of fix for issue #11 (PlanOptimizationHelper)
-		PlanOptimizationHelper.printTightnessOverview(mp);
-		
-		clearDataFromPlan(mp);
-		
-		return mp;
-	}
-	
-	
-	
-	private void clearDataFromPerson(Person p) {
-		p.schedule = null;
-		p.customDays = null;
+		if (job.getResult() == null) {
+			throw new CancellationException("The operation was cancelled by the user.");
+		}
+		return job.getResult();
 	}
-	
+
 	/**
-	 * Collect time infos per person for each day plan
-	 * this data is required to correctly adapt the party times when passengers are moved
-	 **/ 
-	private void storePersonsTimesPerDayPlan(MasterPlan mp) {
-		for (DayPlan dp : mp.getDayPlans().values()) {
-			for (Person p : mp.persons) {
-				if (TimetableHelper.isPersonActiveOnThisDay(p, dp.getDayOfWeekABCombo())) {
-					TimingInfo timingInfo = TimetableHelper.getTimingInfoForDay(p, dp.getDayOfWeekABCombo());
-					dp.schoolboundTimesByInitials.put(p.initials, timingInfo.getStartTime());
-					dp.homeboundTimesByInitials.put(p.initials, timingInfo.getEndTime());
-				}
-			}
+	 * Queues the calculation of a plan (same input as POST /calculatePlan) and returns right away.
+	 * @return the status of the job including its id
+	 */
+	private Object submitJob(Request req, Response res) {
+		try {
+			PlanJob job = jobManager.submit(getSession(req), new Gson().fromJson(AccessLog.readBody(req), PlanInputData.class));
+			res.status(202);
+			return jobManager.getStatus(job);
+		} catch (RejectedExecutionException e) {
+			throw e;
+		} catch (Exception e) {
+			res.status(400);
+			WebPkg pkg = new WebPkg();
+			pkg.topic = "jobs";
+			pkg.message = e.getMessage();
+			return pkg;
 		}
 	}
-	private void clearDataFromPlan(MasterPlan mp) {
-		mp.persons = null;
-		mp.inputsPerDay = null;
-		mp.key = null;
-		
-		for (DayPlan dp : mp.getDayPlans().values()) {
-			for (PartyTuple pt : dp.getPartyTuples()) {
-				clearDataFromPerson(pt.getPartyThere().getDriver());
-				pt.getPartyThere().getPassengers().forEach(p -> clearDataFromPerson(p));
-				
-				clearDataFromPerson(pt.getPartyBack().getDriver());
-				pt.getPartyBack().getPassengers().forEach(p -> clearDataFromPerson(p));
-			}
+
+	/**
+	 * Returns the job given by the path param "id" or halts with 404 if there is no such job or it was submitted
+	 * by another user (halts with 401 without a valid session token)
+	 */
+	private PlanJob getJob(Request req, Response res) {
+		PlanJob job = jobManager.get(req.params(":id"), getSession(req).getToken());
+		if (job == null) {
+			halt(404, "Unknown job: " + req.params(":id"));
 		}
+		return job;
+	}
+
+	private Object cancelJob(Request req, Response res) {
+		PlanJob job = getJob(req, res);
+		jobManager.cancel(job.getId());
+		return jobManager.getStatus(job);
 	}
 
 	/**
-	 * Attempts to find the best plan out of a randomly generated set of plans. Uses
-	 * the metrics gt4 and gt5, indicating the number of persons who drive more than
-	 * 4 / 5 times respectivly. These metrics are being minimized.
-	 * 
-	 * Additional property to minimize (prioritized):
-	 * (1) People driving on a day that violates their customPrefs while having passengers
-	 * (2) ...
+	 * @return the plan of the job or the status of the job (409) if there is no plan (yet)
 	 */
-	private MasterPlan findBestWeekPlan(Controller controller, List<Person> persons, int iterationsWithoutImprovementLimit) throws Exception {
-		MasterPlan mp = null;
-		int lowestNoPersonsWithMoreThan4Drives = 100;
-		int lowestNoPersonsWithMoreThan5Drives = 100;
-		int lowestNoInvoluntaryDrives = 100;
-		int estimatedTotal = Math.round(iterationsWithoutImprovementLimit * 1.3f);
-		int iterationsWithoutImprovement = 0;
-		int i = 0;
-		while (iterationsWithoutImprovement < iterationsWithoutImprovementLimit) {
-			// whenever the user cancels: return best candidate
-			if (isCancelled) {
-				return mp;
-			}
-			
-			Collections.shuffle(persons);
-			float progressValue = 0.5f + ((float) i++ / estimatedTotal) * 0.5f;
-			MasterPlan mpCandidate = controller.calculateWeekPlan(persons);
-			int gt4 = calculateNumberOfPersonsAboveThreshold(mpCandidate, 4);
-			int gt5 = calculateNumberOfPersonsAboveThreshold(mpCandidate, 5);
-			int involuntaryDrives = calculateNumberOfInvoluntaryDrives(mpCandidate);
-			WebService.updateProgress(progressValue, "Calculating plan... (persons with more than four drives: " + lowestNoPersonsWithMoreThan4Drives + ")");
-			if (gt4 < lowestNoPersonsWithMoreThan4Drives) {
-				System.out.println("Found a better plan (gt4): " + lowestNoPersonsWithMoreThan4Drives + " -> " + gt4);
-				lowestNoPersonsWithMoreThan4Drives = gt4;
-				lowestNoPersonsWithMoreThan5Drives = gt5;
-				mp = mpCandidate;
-				iterationsWithoutImprovement = 0;
-			} else if (gt4 == lowestNoPersonsWithMoreThan4Drives && gt5 < lowestNoPersonsWithMoreThan5Drives) {
-				System.out.println("Found a better plan (gt5): " + lowestNoPersonsWithMoreThan5Drives + " -> " + gt5);
-				lowestNoPersonsWithMoreThan4Drives = gt4;
-				lowestNoPersonsWithMoreThan5Drives = gt5;
-				mp = mpCandidate;
-				iterationsWithoutImprovement = 0;
-			} else if (gt4 == lowestNoPersonsWithMoreThan4Drives && gt5 == lowestNoPersonsWithMoreThan5Drives && involuntaryDrives < lowestNoInvoluntaryDrives) {
-				System.out.println("Found a better plan (invol.drives): " + lowestNoInvoluntaryDrives + " -> " + involuntaryDrives);
-				lowestNoInvoluntaryDrives = involuntaryDrives;
-				mp = mpCandidate;
-				iterationsWithoutImprovement = 0;
-			} else {
-				iterationsWithoutImprovement++;
-			}
+	private Object getJobResult(Request req, Response res) {
+		PlanJob job = getJob(req, res);
+		MasterPlan plan = job.getResult();
+		if (plan == null) {
+			res.status(409);
+			return jobManager.getStatus(job);
 		}
-		return mp;
+		return plan;
 	}
 
-	private int calculateNumberOfInvoluntaryDrives(MasterPlan mpCandidate) {
-		int numberOfInvoluntaryDrives = 0;
-		for (DayPlan dayPlan : mpCandidate.getDayPlans().values()) {
-			for (PartyTuple tuple : dayPlan.getPartyTuples()) {
-				Person driver = tuple.getDriver();
-				CustomDay customDay = driver.customDays.get(dayPlan.getDayOfWeekABCombo().getUniqueNumber());
-				boolean passengersHomebound = !tuple.getPartyThere().getPassengers().isEmpty();
-				boolean passengersSchoolbound = !tuple.getPartyBack().getPassengers().isEmpty();
-				if (customDay != null && customDay.drivingSkip && (passengersSchoolbound || passengersHomebound)) {
-					// unvoluntary drive with passengers
-					numberOfInvoluntaryDrives++;
-				}
-			}
-		}
-		return numberOfInvoluntaryDrives;
+	/**
+	 * @return the state of the scheduler (logged in users only)
+	 */
+	private Object getSchedulerStatus(Request req, Response res) {
+		getSession(req);
+		return planScheduler.getStatus();
 	}
 
-	private int calculateNumberOfPersonsAboveThreshold(MasterPlan mpCandidate, int threshold) {
-		NumberOfDrivesStatus nods = new NumberOfDrivesStatus(mpCandidate);
-		int gtThreshold = 0;
-		for (int noDrives : nods.getNumberOfDrives().values()) {
-			if (noDrives > threshold) gtThreshold++; 
+	/**
+	 * Saves the persons list for the precomputation of the upcoming weeks (see {@link PlanScheduler})
+	 */
+	private WebPkg saveSchedulerInput(Request req, Response res) {
+		// logged in users only (halts with 401), the input is bound to the session
+		WebUntisSession session = getSession(req);
+		WebPkg pkg = new WebPkg();
+		pkg.topic = "scheduler";
+		try {
+			planScheduler.saveInput(new Gson().fromJson(AccessLog.readBody(req), PlanInputData.class), session);
+			pkg.value = planScheduler.getStatus();
+		} catch (Exception e) {
+			res.status(400);
+			pkg.message = e.getMessage();
 		}
-		return gtThreshold;
+		return pkg;
 	}
 
-	/** 
-	 * Updates the progress object which can be queried via GET /progress
+	/**
+	 * Logs in with a new session (or the session of the given token) and returns the session token. The token
+	 * is expected in the header X-Session-Token of the subsequent requests, requests without a valid token are
+	 * rejected with 401.
 	 */
-	public static void updateProgress(float f, String msg) {
-		progress.value = f;
-		progress.message = msg;
+	public WebPkg login(Request req, Response res) {
+		WebUntisSession session = WebUntisAdapter.findSession(getSessionToken(req));
+		if (session == null) {
+			session = WebUntisAdapter.createSession();
+		}
+		WebPkg pkg = login(req, res, session);
+		if ((boolean) pkg.value == true) {
+			pkg.token = session.getToken();
+		} else {
+			WebUntisAdapter.removeSession(session);
+		}
+		return pkg;
 	}
 
-	public WebPkg login(Request req, Response res) {
-		String json = req.body();
+	private WebPkg login(Request req, Response res, WebUntisSession session) {
+		String json = AccessLog.readBody(req);
 		WebCredentials credentials = new Gson().fromJson(json, WebCredentials.class);
 		WebPkg pkg = new WebPkg();
 		pkg.topic = "login";
 		try {
-			WebUntisAdapter.login(credentials.username, decode(credentials.hash));
+			WebUntisAdapter.login(session, credentials.username, decode(credentials.hash));
 			pkg.value = true;
 		} catch (Exception e) {
 			res.status(403);
@@ -271,22 +386,34 @@ public class WebService {
 	public WebPkg logout(Request req, Response res) {
 		WebPkg pkg = new WebPkg();
 		pkg.topic = "logout";
+		WebUntisSession session = getSession(req);
 		try {
-			WebUntisAdapter.logout();
+			WebUntisAdapter.logout(session);
 			pkg.value = true;
 		} catch (Exception e) {
 			pkg.value = false;
 			pkg.message = e.getMessage();
+		} finally {
+			WebUntisAdapter.removeSession(session);
+			calculations.remove(session.getToken());
 		}
 		return pkg;
 	}
 	
+	/**
+	 * Checks the credentials with a temporary session (the sessions of the users are not affected)
+	 */
 	public WebPkg checkConnection(Request req, Response res) throws Exception {
-		WebPkg pkg = login(req, res);
-		if ((boolean) pkg.value == true) {
-			WebUntisAdapter.logout();
+		WebUntisSession session = WebUntisAdapter.createSession();
+		try {
+			WebPkg pkg = login(req, res, session);
+			if ((boolean) pkg.value == true) {
+				WebUntisAdapter.logout(session);
+			}
+			return pkg;
+		} finally {
+			WebUntisAdapter.removeSession(session);
 		}
-		return pkg;
 	}
 
 	/*
@@ -295,6 +422,60 @@ public class WebService {
 	 ************************************************************************************************
 	 */
 	
+	/**
+	 * @return the session token given by the header X-Session-Token or the query param "sessionToken" of a GET request (or null)
+	 */
+	private static String getSessionToken(Request req) {
+		String token = req.headers(SESSION_TOKEN_HEADER);
+		if (token != null || !"GET".equals(req.requestMethod())) {
+			// queryParams() would consume a form encoded body before the route reads it
+			return token;
+		}
+		return req.queryParams("sessionToken");
+	}
+
+	/**
+	 * @return the session of the caller, halts with 401 if the session token is missing or unknown
+	 */
+	private static WebUntisSession getSession(Request req) {
+		WebUntisSession session = WebUntisAdapter.getSession(getSessionToken(req));
+		if (session == null) {
+			halt(401, "Not logged in (missing or unknown session token).");
+		}
+		return session;
+	}
+
+	/**
+	 * @return the state of the blocking calculation of the caller's session
+	 */
+	private static Calculation getCalculation(Request req) {
+		return calculations.computeIfAbsent(getSession(req).getToken(), token -> new Calculation());
+	}
+
+	private static class Calculation {
+		final ProgressPublisher progress = new ProgressPublisher();
+		volatile boolean cancelled;
+		volatile boolean running;
+		/**
+		 * Number of started calculations (a progress stream waits for the end of the next one if none is running)
+		 */
+		volatile int generation;
+
+		synchronized void start() {
+			cancelled = false;
+			running = true;
+			generation++;
+		}
+
+		/**
+		 * Publishes the final progress, which also ends the progress streams
+		 */
+		void finish(ProgressObject finalProgress) {
+			running = false;
+			progress.update(finalProgress);
+		}
+	}
+
 	/**
 	 * decodes a base64 encoded string
 	 * @param hash the encoded string
@@ -304,23 +485,6 @@ public class WebService {
 		return new String(Base64.decodeBase64(hash));
 	}
 	
-	/**
-	 * This method is executed before an incoming request is handled. It logs the incoming request. 
-	 * @param req the incoming request
-	 */
-	private void logIncomingRequest(Request req) {
-		try {
-			String reqBody = req.body();
-			String reqUrl = req.url();
-			String reqMethod = req.requestMethod();
-			if (reqUrl != null && !reqUrl.contains("/progress")) {
-				System.out.println("Incoming " + reqMethod + " request to " + reqUrl + ": " + reqBody);
-			}
-		} catch (Exception e) {
-			System.err.println("Couldn't log incoming request. " + e.toString());
-		}
-	}
-	
 	/**
 	 * Enables CORS on requests. This method is an initialization method and should
 	 * be called once.
@@ -0,0 +1,59 @@
+package com.thabok.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thabok.entities.Person;
+import com.thabok.entities.TimingInfo;
+import com.thabok.main.Controller;
+import com.thabok.untis.Period;
+
+public class TimetableHelperTest {
+
+	@Before
+	public void setUp() {
+		Controller.setReferenceWeekStartDate(20210830);
+	}
+
+	@After
+	public void tearDown() {
+		Controller.setReferenceWeekStartDate(0);
+	}
+
+	private static Period period(int date, int startTime, int endTime) {
+		Period period = new Period();
+		period.date = date;
+		period.startTime = startTime;
+		period.endTime = endTime;
+		return period;
+	}
+
+	@Test
+	public void weekendDatesAreSkipped() throws Exception {
+		Person person = new Person();
+		person.initials = "ABC";
+		Map<Integer, Period> timetable = new TreeMap<>();
+		timetable.put(20210830, period(20210830, 755, 1220));
+		// saturday and sunday between the A and B week
+		timetable.put(20210904, period(20210904, 800, 1200));
+		timetable.put(20210905, period(20210905, 900, 1000));
+		timetable.put(20210910, period(20210910, 945, 1310));
+
+		Map<Integer, TimingInfo> schedule = TimetableHelper.timetableToSchedule(person, timetable);
+
+		assertEquals(2, schedule.size());
+		// monday A and friday B
+		assertTrue(schedule.containsKey(1));
+		assertTrue(schedule.containsKey(12));
+		assertEquals(755, schedule.get(1).getStartTime());
+		assertEquals(1310, schedule.get(12).getEndTime());
+	}
+
+}
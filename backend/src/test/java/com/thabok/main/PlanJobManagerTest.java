@@ -0,0 +1,219 @@
+package com.thabok.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.Person;
+import com.thabok.entities.PlanInputData;
+import com.thabok.untis.StandInSupport;
+import com.thabok.untis.WebUntisAdapter;
+import com.thabok.untis.WebUntisSession;
+import com.thabok.untis.WebUntisStandIn;
+
+/**
+ * The jobs fetch the timetables from a {@link WebUntisStandIn} on a free port (see {@link StandInSupport}).
+ * The function for the precomputed plans is called after the timetables are fetched, the tests use it to
+ * block or break the calculation.
+ */
+public class PlanJobManagerTest {
+
+	private static final long TIMEOUT_MS = 10000;
+
+	private static WebUntisStandIn standIn;
+	private WebUntisSession session;
+
+	@BeforeClass
+	public static void startStandIn() {
+		standIn = StandInSupport.start();
+	}
+
+	@AfterClass
+	public static void stopStandIn() {
+		standIn.stop();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		session = WebUntisAdapter.createSession();
+		WebUntisAdapter.login(session, "user", "password");
+	}
+
+	@After
+	public void tearDown() {
+		WebUntisAdapter.removeSession(session);
+	}
+
+	private static PlanInputData createInput() {
+		PlanInputData inputData = new PlanInputData();
+		inputData.scheduleReferenceStartDate = 20210830;
+		inputData.persons = new ArrayList<>();
+		for (String initials : new String[] { "ABC", "DEF", "GHI" }) {
+			Person person = new Person();
+			person.firstName = initials;
+			person.lastName = initials;
+			person.initials = initials;
+			person.numberOfSeats = 5;
+			inputData.persons.add(person);
+		}
+		return inputData;
+	}
+
+	private static void awaitFinished(PlanJob job) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while (!job.isFinished() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue("The job didn't finish: " + job.getState(), job.isFinished());
+	}
+
+	/**
+	 * @return a function that counts down started, waits for release and then returns an empty plan
+	 */
+	private static Function<String, MasterPlan> blockingStubPlans(CountDownLatch started, CountDownLatch release) {
+		return fingerprint -> {
+			started.countDown();
+			try {
+				release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new MasterPlan(new ArrayList<>(), null);
+		};
+	}
+
+	@Test
+	public void jobsAreDone() throws Exception {
+		PlanJobManager jobManager = new PlanJobManager(1, 1, 1, 1, fingerprint -> new MasterPlan(new ArrayList<>(), null));
+		PlanJob job = jobManager.submit(session, createInput());
+		awaitFinished(job);
+		assertEquals(PlanJob.State.DONE, job.getState());
+		assertNotNull(job.getResult());
+		assertNull(job.getError());
+		assertEquals(0, jobManager.getActiveJobCount());
+	}
+
+	@Test
+	public void queuedJobsRunWhenASlotIsFree() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		PlanJobManager jobManager = new PlanJobManager(1, 1, 1, 1, blockingStubPlans(started, release));
+		PlanJob running = jobManager.submit(session, createInput());
+		PlanJob queued;
+		try {
+			assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+			queued = jobManager.submit(session, createInput());
+			assertEquals(PlanJob.State.QUEUED, queued.getState());
+		} finally {
+			release.countDown();
+		}
+		awaitFinished(running);
+		awaitFinished(queued);
+		assertEquals(PlanJob.State.DONE, running.getState());
+		assertEquals(PlanJob.State.DONE, queued.getState());
+		assertNotNull(queued.getResult());
+	}
+
+	@Test
+	public void jobsOverPoolAndQueueAreRejected() throws Exception {
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		PlanJobManager jobManager = new PlanJobManager(2, 1, 1, 1, blockingStubPlans(started, release));
+		try {
+			jobManager.submit(session, createInput());
+			jobManager.submit(session, createInput());
+			assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+			PlanJob queued = jobManager.submit(session, createInput());
+			assertEquals(PlanJob.State.QUEUED, queued.getState());
+			try {
+				jobManager.submit(session, createInput());
+				fail("The job should be rejected.");
+			} catch (RejectedExecutionException e) {
+				// expected: both threads are busy, the queue is full
+			}
+			assertEquals(3, jobManager.getActiveJobCount());
+			assertTrue(jobManager.getRetryAfterSeconds() >= 1);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void jobsOverCapacityAreRejected() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Function<String, MasterPlan> blockingPlans = fingerprint -> {
+			started.countDown();
+			try {
+				release.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IllegalStateException("stopped by the test");
+		};
+		PlanJobManager jobManager = new PlanJobManager(1, 1, 1, 1, blockingPlans);
+		PlanJob running = jobManager.submit(session, createInput());
+		try {
+			assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+			PlanJob queued = jobManager.submit(session, createInput());
+			assertEquals(PlanJob.State.QUEUED, queued.getState());
+			assertEquals(1, jobManager.getQueuePosition(queued));
+			try {
+				jobManager.submit(session, createInput());
+				fail("The job should be rejected.");
+			} catch (RejectedExecutionException e) {
+				// expected: one job is running, the queue is full
+			}
+			assertEquals(2, jobManager.getActiveJobCount());
+			assertEquals(2, jobManager.getStatus(session.getToken()).size());
+		} finally {
+			release.countDown();
+		}
+		awaitFinished(running);
+		assertEquals(PlanJob.State.FAILED, running.getState());
+		assertEquals("stopped by the test", running.getError());
+	}
+
+	@Test
+	public void errorsFailTheJob() throws Exception {
+		PlanJobManager jobManager = new PlanJobManager(1, 1, 1, 1, fingerprint -> {
+			throw new StackOverflowError();
+		});
+		PlanJob job = jobManager.submit(session, createInput());
+		awaitFinished(job);
+		assertEquals(PlanJob.State.FAILED, job.getState());
+		assertNotNull(job.getError());
+		assertEquals(0, jobManager.getActiveJobCount());
+	}
+
+	@Test
+	public void jobsBelongToTheSubmittingSession() throws Exception {
+		PlanJobManager jobManager = new PlanJobManager(1, 1, 1, 1, fingerprint -> {
+			throw new IllegalStateException("stopped by the test");
+		});
+		PlanJob job = jobManager.submit(session, createInput());
+		awaitFinished(job);
+		assertSame(job, jobManager.get(job.getId(), session.getToken()));
+		assertNull(jobManager.get(job.getId(), "another token"));
+		assertNull(jobManager.get(job.getId(), null));
+		assertEquals(1, jobManager.getStatus(session.getToken()).size());
+		assertTrue(jobManager.getStatus("another token").isEmpty());
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.thabok.main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.thabok.entities.MasterPlan;
+import com.thabok.entities.Person;
+import com.thabok.util.JsonUtil;
+
+public class PlanResultCacheTest {
+
+	private static MasterPlan newPlan() {
+		MasterPlan plan = new MasterPlan(new ArrayList<Person>(), null);
+		plan.summary = "plan";
+		return plan;
+	}
+
+	@Test
+	public void identicalInputsAreSearchedOnce() throws Exception {
+		PlanResultCache cache = new PlanResultCache(5);
+		AtomicInteger searches = new AtomicInteger();
+		MasterPlan first = cache.getOrSearch("fingerprint", () -> false, () -> {
+			searches.incrementAndGet();
+			return newPlan();
+		});
+		MasterPlan second = cache.getOrSearch("fingerprint", () -> false, () -> {
+			searches.incrementAndGet();
+			return newPlan();
+		});
+		assertEquals(1, searches.get());
+		assertSame(first, second);
+	}
+
+	@Test
+	public void requestsDontChangeTheCachedPlan() throws Exception {
+		PlanResultCache cache = new PlanResultCache(5);
+		MasterPlan cached = cache.getOrSearch("fingerprint", () -> false, PlanResultCacheTest::newPlan);
+
+		List<String> changedTeachers1 = List.of("ABC");
+		List<String> changedTeachers2 = List.of("XYZ");
+		MasterPlan plan1 = cache.getOrSearch("fingerprint", () -> false, PlanResultCacheTest::newPlan).copyForRequest(changedTeachers1);
+		MasterPlan plan2 = cache.getOrSearch("fingerprint", () -> false, PlanResultCacheTest::newPlan).copyForRequest(changedTeachers2);
+		// the response of the first request is prepared for the client
+		JsonUtil.stripDrivingPlan(plan1);
+
+		assertNotSame(plan1, plan2);
+		assertEquals(changedTeachers1, plan1.changedTeachers);
+		assertEquals(changedTeachers2, plan2.changedTeachers);
+		assertNull(cached.changedTeachers);
+		assertNull(plan1.persons);
+		assertNotNull(plan2.persons);
+		assertNotNull(cached.persons);
+		assertSame(cached.getDayPlans(), plan2.getDayPlans());
+	}
+
+	@Test
+	public void cancelledSearchesAreNotCached() throws Exception {
+		PlanResultCache cache = new PlanResultCache(5);
+		cache.getOrSearch("fingerprint", () -> true, PlanResultCacheTest::newPlan);
+		AtomicInteger searches = new AtomicInteger();
+		cache.getOrSearch("fingerprint", () -> false, () -> {
+			searches.incrementAndGet();
+			return newPlan();
+		});
+		assertEquals(1, searches.get());
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.thabok.untis;
+
+import java.nio.file.Paths;
+
+/**
+ * Starts a {@link WebUntisStandIn} on a free port for the tests and points the {@link WebUntisAdapter} to it.
+ */
+public class StandInSupport {
+
+	public static WebUntisStandIn start() {
+		WebUntisStandIn standIn = new WebUntisStandIn(0, Paths.get("target", "no-recordings"), null, 0, 0, 0.0, 1);
+		standIn.start();
+		WebUntisAdapter.setUrl(standIn.getUrl());
+		return standIn;
+	}
+}
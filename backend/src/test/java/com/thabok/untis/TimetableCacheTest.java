@@ -0,0 +1,80 @@
+package com.thabok.untis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimetableCacheTest {
+
+	private static final int[] DAYS = { 20210830, 755, 1305, 20210831, 840, 1220 };
+
+	@Test
+	public void leastRecentlyUsedWeeksAreEvicted() {
+		TimetableCache cache = new TimetableCache(null, TimeUnit.HOURS.toMillis(1), 2);
+		String week1 = TimetableCache.getKey("school", "ABC", 20210830);
+		String week2 = TimetableCache.getKey("school", "ABC", 20210906);
+		String week3 = TimetableCache.getKey("school", "XYZ", 20210830);
+		cache.put(week1, DAYS);
+		cache.put(week2, DAYS);
+		// week1 is used again, so week2 is the least recently used one
+		assertNotNull(cache.get(week1));
+		cache.put(week3, DAYS);
+
+		assertNotNull(cache.get(week1));
+		assertNull(cache.get(week2));
+		assertNotNull(cache.get(week3));
+		assertEquals(1L, cache.getStats().get("evictions"));
+		assertEquals(2, cache.getStats().get("entries"));
+	}
+
+	@Test
+	public void staleWeeksAreStillServed() {
+		TimetableCache cache = new TimetableCache(null, 0, 10);
+		String key = TimetableCache.getKey("school", "ABC", 20210830);
+		cache.put(key, DAYS);
+		TimetableCache.CachedWeek week = cache.get(key);
+		assertNotNull(week);
+		assertArrayEquals(DAYS, week.days);
+		assertTrue(cache.isStale(new TimetableCache.CachedWeek(DAYS, System.currentTimeMillis() - 1)));
+		assertFalse(new TimetableCache(null, TimeUnit.HOURS.toMillis(1), 10).isStale(week));
+	}
+
+	@Test
+	public void clearTeacher() {
+		TimetableCache cache = new TimetableCache(null, TimeUnit.HOURS.toMillis(1), 10);
+		cache.put(TimetableCache.getKey("school", "ABC", 20210830), DAYS);
+		cache.put(TimetableCache.getKey("school", "ABC", 20210906), DAYS);
+		cache.put(TimetableCache.getKey("school", "XYZ", 20210830), DAYS);
+		assertEquals(2, cache.clear("ABC"));
+		assertNotNull(cache.get(TimetableCache.getKey("school", "XYZ", 20210830)));
+	}
+
+	@Test
+	public void savedWeeksAreLoaded() throws Exception {
+		Path file = Files.createTempFile("timetable-cache", ".json.gz");
+		try {
+			String key = TimetableCache.getKey("school", "ABC", 20210830);
+			TimetableCache cache = new TimetableCache(file, TimeUnit.HOURS.toMillis(1), 10);
+			cache.put(key, DAYS);
+			cache.save();
+			// the delayed save of put() would rewrite the file after it is deleted
+			cache.close();
+
+			TimetableCache loadedCache = new TimetableCache(file, TimeUnit.HOURS.toMillis(1), 10);
+			loadedCache.load();
+			assertArrayEquals(DAYS, loadedCache.get(key).days);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
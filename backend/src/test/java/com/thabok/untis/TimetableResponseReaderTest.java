@@ -0,0 +1,125 @@
+package com.thabok.untis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TimetableResponseReaderTest {
+
+	private static String period(int date, int startTime, int endTime, String teacher) {
+		return period(date, startTime, endTime, teacher, null, 1);
+	}
+
+	private static String period(int date, int startTime, int endTime, String teacher, String code, int subjectId) {
+		return "{\"id\":" + date + startTime + ",\"date\":" + date + ",\"startTime\":" + startTime + ",\"endTime\":" + endTime
+				+ (code != null ? ",\"code\":\"" + code + "\"" : "")
+				+ ",\"su\":[{\"id\":" + subjectId + "}],\"te\":[{\"id\":1,\"name\":\"" + teacher + "\"}]}";
+	}
+
+	private static String response(String id, String... periods) {
+		return "{\"jsonrpc\":\"2.0\",\"id\":\"" + id + "\",\"result\":[" + String.join(",", periods) + "]}";
+	}
+
+	private static String error(String id, String message) {
+		return "{\"jsonrpc\":\"2.0\",\"id\":\"" + id + "\",\"error\":{\"code\":-7002,\"message\":\"" + message + "\"}}";
+	}
+
+	@Test
+	public void firstAndLastPeriodPerDay() throws Exception {
+		String response = response("ABC",
+				period(20210830, 945, 1030, "ABC"),
+				period(20210830, 755, 840, "ABC"),
+				period(20210830, 1220, 1305, "ABC"),
+				// excursion and on-call substitution are not relevant
+				period(20210830, 1400, 1530, "ABC", "irregular", 1),
+				period(20210830, 700, 745, "ABC", null, Subject.ON_CALL_SUBSTITUTION_ID),
+				period(20210831, 840, 925, "ABC"));
+
+		Map<Integer, Period> timetable = TimetableResponseReader.readTimetable(new StringReader(response), "ABC");
+
+		assertEquals(2, timetable.size());
+		assertEquals(755, timetable.get(20210830).startTime);
+		assertEquals(1305, timetable.get(20210830).endTime);
+		assertEquals(840, timetable.get(20210831).startTime);
+		assertEquals(925, timetable.get(20210831).endTime);
+	}
+
+	@Test
+	public void errorResponse() {
+		try {
+			TimetableResponseReader.readTimetable(new StringReader(error("ABC", "no such element")), "ABC");
+			fail("The error should be thrown.");
+		} catch (Exception e) {
+			assertEquals("no such element", e.getMessage());
+		}
+	}
+
+	@Test
+	public void noTimetable() {
+		try {
+			TimetableResponseReader.readTimetable(new StringReader("[]"), "ABC");
+			fail("The missing timetable should be reported.");
+		} catch (Exception e) {
+			assertEquals("No timetable received from WebUntis.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void batch() throws Exception {
+		// the id of the last response comes after the result
+		String response = "[" + response("ABC", period(20210830, 755, 1305, "ABC"))
+				+ "," + error("XYZ", "no such element")
+				+ ",{\"jsonrpc\":\"2.0\",\"result\":[" + period(20210901, 840, 1130, "DEF") + "],\"id\":\"DEF\"}]";
+
+		Map<String, TimetableResponseReader.Result> results = TimetableResponseReader.readTimetableBatch(new StringReader(response));
+
+		assertEquals(3, results.size());
+		assertNull(results.get("ABC").error);
+		assertEquals(1305, results.get("ABC").timetable.get(20210830).endTime);
+		assertNull(results.get("XYZ").timetable);
+		assertEquals("no such element", results.get("XYZ").error);
+		assertNotNull(results.get("DEF").timetable);
+		assertEquals(840, results.get("DEF").timetable.get(20210901).startTime);
+	}
+
+	@Test
+	public void batchNotSupported() throws Exception {
+		assertNull(TimetableResponseReader.readTimetableBatch(new StringReader(error(null, "invalid request"))));
+	}
+
+	@Test
+	public void weekendPeriodsAreDropped() throws Exception {
+		// 20210830 is the monday of the A week, 20210904 / 20210905 the weekend before the B week
+		String response = response("ABC",
+				period(20210903, 755, 840, "ABC"),
+				period(20210904, 800, 1200, "ABC"),
+				period(20210905, 900, 1000, "ABC"),
+				period(20210906, 945, 1030, "ABC"));
+
+		Map<Integer, Period> timetable = TimetableResponseReader.readTimetable(new StringReader(response), "ABC");
+
+		assertEquals(2, timetable.size());
+		assertTrue(timetable.containsKey(20210903));
+		assertTrue(timetable.containsKey(20210906));
+		assertFalse(timetable.containsKey(20210904));
+		assertFalse(timetable.containsKey(20210905));
+	}
+
+	@Test
+	public void isWeekday() {
+		assertTrue(TimetableResponseReader.isWeekday(20210830));
+		assertTrue(TimetableResponseReader.isWeekday(20210903));
+		assertFalse(TimetableResponseReader.isWeekday(20210904));
+		assertFalse(TimetableResponseReader.isWeekday(20210905));
+		assertFalse(TimetableResponseReader.isWeekday(0));
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.thabok.untis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Calls against a {@link WebUntisStandIn} on a free port (see {@link StandInSupport}).
+ */
+public class WebUntisAdapterTest {
+
+	private static WebUntisStandIn standIn;
+	private WebUntisSession session;
+
+	@BeforeClass
+	public static void startStandIn() {
+		standIn = StandInSupport.start();
+	}
+
+	@AfterClass
+	public static void stopStandIn() {
+		standIn.stop();
+	}
+
+	@Before
+	public void setUp() {
+		// cached timetables would hide the requests that the tests count
+		WebUntisAdapter.clearCache(null);
+	}
+
+	@After
+	public void tearDown() {
+		standIn.setFaults(0, 0, 0);
+		if (session != null) {
+			WebUntisAdapter.removeSession(session);
+		}
+	}
+
+	private static long getRequests(WebUntisSession session) {
+		return (long) session.getStats().get("requests");
+	}
+
+	@Test
+	public void authenticateIsNotRetried() {
+		session = WebUntisAdapter.createSession();
+		standIn.setFaults(1.0, 0, 0);
+		try {
+			WebUntisAdapter.login(session, "user", "password");
+			fail("The login should fail.");
+		} catch (Exception e) {
+			// expected
+		}
+		assertFalse(session.isLoggedIn());
+		assertEquals(1, getRequests(session));
+	}
+
+	@Test
+	public void timetableRequestsAreRetried() throws Exception {
+		session = WebUntisAdapter.createSession();
+		WebUntisAdapter.login(session, "user", "password");
+		assertTrue(session.isLoggedIn());
+		long requestsAfterLogin = getRequests(session);
+		standIn.setFaults(1.0, 0, 0);
+		try {
+			WebUntisAdapter.getTimetable(session, "RTY", 20210830);
+			fail("The timetable request should fail.");
+		} catch (Exception e) {
+			// expected
+		}
+		// first attempt and two retries (system property webuntis.retries, default: 2)
+		assertEquals(3, getRequests(session) - requestsAfterLogin);
+	}
+
+	@Test
+	public void timetableBatch() throws Exception {
+		session = WebUntisAdapter.createSession();
+		WebUntisAdapter.login(session, "user", "password");
+		long requestsAfterLogin = getRequests(session);
+		Map<String, String> failures = new HashMap<>();
+		Map<String, Map<Integer, Period>> timetables = WebUntisAdapter.getTimetables(session,
+				List.of("BTA", "BTB", "B T"), 20210830, 10, failures);
+		assertEquals(2, timetables.size());
+		assertFalse(timetables.get("BTA").isEmpty());
+		assertFalse(timetables.get("BTB").isEmpty());
+		// the stand-in doesn't know the initials with a blank
+		assertTrue(failures.containsKey("B T"));
+		// one batch request for all teachers
+		assertEquals(1, getRequests(session) - requestsAfterLogin);
+	}
+
+	@Test
+	public void timetable() throws Exception {
+		session = WebUntisAdapter.createSession();
+		WebUntisAdapter.login(session, "user", "password");
+		assertFalse(WebUntisAdapter.getTimetable(session, "TTB", 20210830).isEmpty());
+	}
+
+}
@@ -687,11 +687,30 @@ class MainPage extends Component {
     }
 
     startProgressTimer() {
-        this.timer = setInterval(() => this.getProgress(), 1000)
         this.setState({ progressMessage: "Preparing..." })
+        if (this.state.backendService === "java" && typeof EventSource !== "undefined") {
+            // progress is pushed by the backend (server-sent events), polling is the fallback
+            // EventSource can't send headers: the session token is passed as query param
+            const query = this.sessionToken != null ? '?sessionToken=' + encodeURIComponent(this.sessionToken) : ''
+            this.progressStream = new EventSource(this.getBackendUrl() + '/progress/stream' + query)
+            this.progressStream.addEventListener('progress', event => this.updateProgress(JSON.parse(event.data)))
+            this.progressStream.onerror = () => {
+                if (this.progressStream != null) {
+                    this.progressStream.close()
+                    this.progressStream = null
+                    this.timer = setInterval(() => this.getProgress(), 1000)
+                }
+            }
+        } else {
+            this.timer = setInterval(() => this.getProgress(), 1000)
+        }
     }
 
     stopProgressTimer() {
+        if (this.progressStream != null) {
+            this.progressStream.close()
+            this.progressStream = null
+        }
         if (this.timer != null) {
             clearInterval(this.timer)
             this.timer = null
@@ -716,19 +735,12 @@ class MainPage extends Component {
         if (this.state.backendService === "java") {
             await fetch(this.getBackendUrl() + '/progress', {
                 method: 'GET',
-                headers: {
-                    'Content-Type' : 'application/json'
-                }
+                headers: this.getHeaders()
             })
             .then(response => {
                 if (response.ok) {
                     // update progress in state
-                    response.json().then(progressObj => {
-                        this.setState({
-                            progressValue: progressObj.value,
-                            progressMessage: progressObj.message
-                        })
-                    })
+                    response.json().then(progressObj => this.updateProgress(progressObj))
                 }
             })
             .catch(() => {
@@ -737,13 +749,22 @@ class MainPage extends Component {
         }
     }
 
+    updateProgress(progressObj) {
+        let message = progressObj.message
+        if (progressObj.phase === "searching" && progressObj.iterationsPerSecond > 0) {
+            message += " - " + progressObj.iterations + " candidates (" + Math.round(progressObj.iterationsPerSecond) + "/s)"
+        }
+        this.setState({
+            progressValue: progressObj.value,
+            progressMessage: message
+        })
+    }
+
     async cancelCalculation() {
         if (this.state.backendService === "java") {
             fetch(this.getBackendUrl() + '/cancel', {
                 method: 'POST',
-                headers: {
-                    'Content-Type' : 'application/json'
-                }
+                headers: this.getHeaders()
             })
             this.setState({ 
                 waitingForPlan: false,
@@ -754,9 +775,10 @@ class MainPage extends Component {
     }
 
     async requestDrivingPlan(weekDayPermutation=undefined) {
-        this.startProgressTimer()
         this.setState( { waitingForPlan: true, carpoolmembersCollapsed: true, isProgressDialogOpen: true })
         await this.login("login", true)
+        // the progress stream needs the session token of the login
+        this.startProgressTimer()
         await this.calculatePlan(weekDayPermutation)
         this.logout()
         this.stopProgressTimer()
@@ -949,6 +971,14 @@ class MainPage extends Component {
         return this.state.backendService === 'java' ? "http://127.0.0.1:1337" : "http://127.0.0.1:1338"
     }
 
+    getHeaders() {
+        const headers = { 'Content-Type' : 'application/json' }
+        if (this.sessionToken != null) {
+            headers['X-Session-Token'] = this.sessionToken
+        }
+        return headers
+    }
+
     async calculatePlan(weekDayPermutation=undefined) {
         try {
             const referenceDate = (this.state.ABWeekStartDate.getFullYear() * 10000) + ((this.state.ABWeekStartDate.getMonth() + 1) * 100) + (this.state.ABWeekStartDate.getDate())
@@ -961,9 +991,7 @@ class MainPage extends Component {
             }
             await fetch(this.getBackendUrl() + '/calculatePlan', {
                 method: 'POST',
-                headers: {
-                    'Content-Type' : 'application/json'
-                },
+                headers: this.getHeaders(),
                 body: JSON.stringify(payload)
             })
             .then(response => {
@@ -1000,7 +1028,8 @@ class MainPage extends Component {
     logout() {
         // can run in background, no need to wait for reply
         if (this.state.backendService === "java") {
-            fetch(this.getBackendUrl() + '/logout', { method: 'POST' })
+            fetch(this.getBackendUrl() + '/logout', { method: 'POST', headers: this.getHeaders() })
+            this.sessionToken = null
         }
     }
 
@@ -1008,14 +1037,16 @@ class MainPage extends Component {
         if (this.state.backendService === "java") {
             await fetch(this.getBackendUrl() + '/' + route, {
                 method: 'POST',
-                headers: {
-                    'Content-Type' : 'application/json'
-                },
+                headers: this.getHeaders(),
                 body: JSON.stringify({ username: this.state.username, hash: Buffer.from(this.state.password).toString('base64')})
             })
             .then(response => {
                 if (response.ok) {
                     // connection succeeded
+                    if (route === "login") {
+                        // identifies the WebUntis session of this user in the subsequent requests
+                        response.json().then(pkg => { this.sessionToken = pkg.token })
+                    }
                     if (!quiet) {
                         toast.show({message: "Successfully connected to WebUntis with user " + this.state.username, intent: "success", icon: "tick"})
                     }